@@ -22,6 +22,30 @@ CREATE INDEX IF NOT EXISTS IDX_INSTANCE_DAY_HOUR ON cases (instance, dayOfWeek,
 CREATE INDEX IF NOT EXISTS IDX_INIT_TIME ON cases (initTime);
 CREATE INDEX IF NOT EXISTS IDX_END_TIME ON cases (endTime);
 
+-- death and censored counts of each distinct time of a bucket, rebuilt from cases after each import
+CREATE TABLE cases_summary (
+  region varchar(30) NOT NULL,
+  zone varchar(30) NOT NULL,
+  instance varchar(30) NOT NULL,
+  dayOfWeek integer NOT NULL,
+  hourOfDay integer NOT NULL,
+  timeToRevocation bigint NOT NULL,
+  deaths integer NOT NULL,
+  censored integer NOT NULL,
+  PRIMARY KEY (region, zone, instance, dayOfWeek, hourOfDay, timeToRevocation)
+);
+
+CREATE INDEX IF NOT EXISTS IDX_SUMMARY_INSTANCE_DAY_HOUR ON cases_summary (instance, dayOfWeek, hourOfDay);
+
+-- time of the last price record turned into cases of each series, where incremental case generation restarts
+CREATE TABLE cases_watermark (
+  region varchar(30) NOT NULL,
+  zone varchar(30) NOT NULL,
+  instance varchar(30) NOT NULL,
+  lastTime bigint NOT NULL,
+  PRIMARY KEY (region, zone, instance)
+);
+
 
 CREATE TABLE spotprice (
   id integer NOT NULL,
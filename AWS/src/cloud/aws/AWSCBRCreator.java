@@ -7,10 +7,16 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.logging.log4j.LogManager;
@@ -20,18 +26,29 @@ import org.joda.time.Minutes;
 
 import cloud.CaseBasedCreator;
 import cloud.aws.bean.MySpotPrice;
+import cloud.aws.bean.PriceMaxIndex;
+import cloud.aws.bean.PriceSeries;
 import cloud.aws.dao.SpotDAO;
+import cloud.aws.util.SurvivalCubeCache;
+import core.executor.cbr.BufferedCaseSink;
 import core.executor.cbr.Case;
+import core.executor.cbr.CaseSink;
+import core.executor.cbr.ChunkCaseBuffer;
+import core.executor.cbr.FileCaseSink;
+import core.executor.cbr.ListCaseSink;
 import core.util.DateUtil;
+import core.util.TimeBuckets;
 
 public class AWSCBRCreator extends Thread implements CaseBasedCreator, Runnable {
 	
-//	private static final double[] addictions = new double[] {1, 1.1, 1.2, 1.3, 1.4, 1.5};
-	private static final double[] addictions = new double[] {1};
+//	private static final double[] DEFAULT_ADDICTIONS = new double[] {1, 1.1, 1.2, 1.3, 1.4, 1.5};
+	private static final double[] DEFAULT_ADDICTIONS = new double[] {1};
 
 	private static final Logger log = LogManager.getLogger(AWSCBRCreator.class);
 	
-	private static SpotDAO dao;
+	public static final int DEFAULT_CHUNK_SIZE = 50000;
+	
+	private SpotDAO dao;
 	
 	private String region;
 	private String zone;
@@ -41,6 +58,13 @@ public class AWSCBRCreator extends Thread implements CaseBasedCreator, Runnable
 	private Date limitDate;
 	
 	public boolean saveToDatabase = true;
+	public boolean useNextGreaterIndex = true;
+	public boolean useParallelChunks = true;
+	public int chunkSize = DEFAULT_CHUNK_SIZE;
+	public boolean incremental = false;
+	public double[] addictions = DEFAULT_ADDICTIONS;
+	// zone of the day of week and hour of day of the cases
+	public TimeBuckets timeBuckets = TimeBuckets.ofDefault();
 	
 	public AWSCBRCreator(String region, String zone, String instance, Date initDate, Date limitDate, File fileToSave, boolean saveToDB) {
 		this(region, zone, instance, fileToSave, saveToDB);
@@ -168,6 +192,11 @@ public class AWSCBRCreator extends Thread implements CaseBasedCreator, Runnable
 	
 	public void executeNew() throws SQLException {
 		
+		if (incremental && saveToDatabase) {
+			executeIncremental();
+			return;
+		}
+		
 		StringBuilder st = new StringBuilder("### Creating cases from "+ region +"/"+ zone +"/"+ instance +". ");
 		
 		if (this.initDate != null || this.limitDate != null) {
@@ -176,157 +205,569 @@ public class AWSCBRCreator extends Thread implements CaseBasedCreator, Runnable
 		}
 		log.info(st.toString());
 		
-		List<MySpotPrice> listOfChanges = null;
+		PriceSeries series = findPriceSeries();
+		
+		if (series != null && !series.isEmpty()) {
+			
+			log.info("Records found: "+ series.size() +". Generating cases.");
+			
+			// cases are written as they are generated, and saved only when all of them were
+			try {
+				writeCases(openCaseSink(series), sink -> createCases(series, sink));
+			} catch (IOException e) {
+				log.error("Failed to save cases of "+ region +"/"+ zone +"/"+ instance +": "+ e.getMessage());
+			}
+			
+			// cached survival curves of the series are outdated now
+			SurvivalCubeCache.getInstance().invalidate(region, zone, instance);
+			
+		}
+		
+		log.info("### End of processing "+ region +"/"+ zone +"/"+ instance);
+		
+		
+	}
+	
+	private PriceSeries findPriceSeries() {
 		try {
 			if (this.initDate != null || this.limitDate != null) {
-				listOfChanges = dao.findAll(this.region, this.zone, this.instance, this.initDate, this.limitDate);
+				return dao.findPriceSeries(this.region, this.zone, this.instance, this.initDate, this.limitDate);
 			} else {
-				listOfChanges = dao.findAll(this.region, this.zone, this.instance);
+				return dao.findPriceSeries(this.region, this.zone, this.instance);
 			}
 		} catch (SQLException e) {
 			log.error("Error when trying to create case based instances: "+ e.getMessage());
+			return null;
 		}
+	}
+	
+	/**
+	 * Cases of all addictions of the series, by the configured generator.
+	 */
+	private void createCases(PriceSeries series, CaseSink sink) {
 		
-		if (listOfChanges != null && !listOfChanges.isEmpty()) {
+		boolean parallel = useParallelChunks && series.size() > chunkSize;
+		// higher prices of all addictions found in one pass
+		int[][] nextGreater = useNextGreaterIndex && !parallel ? nextGreaterIndex(series.toPriceArray(), addictions) : null;
+		
+		for (int k = 0; k < addictions.length; k++) {
 			
-			log.info("Records found: "+ (listOfChanges != null ? listOfChanges.size() : 0) +". Generating cases.");
+			double addiction = addictions[k];
+			log.debug("Processing with addiction of "+ addiction);
 			
-			List<Case> caseBasedList = new LinkedList<>();
+			long count = sink.getCount();
+			if (!useNextGreaterIndex) {
+				createCasesWithForwardScan(series, addiction, sink);
+			} else if (parallel) {
+				createCasesInParallel(series, addiction, ForkJoinPool.commonPool(), sink);
+			} else {
+				createCases(series, addiction, nextGreater[k], sink);
+			}
+			
+			log.info((sink.getCount() - count) +" cases generated from "+ series.size() +" records in "+ region +"/"+ zone +"/"+ instance );
+		}
+	}
+	
+	/**
+	 * Generates the cases into the sink and closes it, saving them, or aborts it when the generation fails.
+	 */
+	private static void writeCases(CaseSink sink, Consumer<CaseSink> generation) throws IOException {
+		boolean generated = false;
+		try {
+			generation.accept(sink);
+			generated = true;
+		} finally {
+			if (!generated) {
+				sink.abort();
+			}
+		}
+		sink.close();
+	}
+	
+	/**
+	 * Sink of the generated cases: COPY into the cases table, with the summary and the watermark of the series, or 
+	 * the CSV file to import, written by another thread with bounded buffering.
+	 */
+	protected CaseSink openCaseSink(PriceSeries series) throws IOException, SQLException {
+		CaseSink sink = saveToDatabase ? dao.openCasesSink(region, zone, instance, false, series.getLastTime()) : new FileCaseSink(fileToSave);
+		return new BufferedCaseSink(sink);
+	}
+	
+	/**
+	 * Generates only the cases changed by the records after the watermark of the series and saves them as a delta: 
+	 * the censored cases are replaced by their revocation or by a longer censored case, and the records after the 
+	 * watermark get their cases. Only the records of the last hour before the watermark are loaded with the new ones. 
+	 * A series without watermark has all its cases generated again, replacing the saved ones.
+	 */
+	public void executeIncremental() throws SQLException {
+		
+		Long watermark = dao.findCasesWatermark(region, zone, instance);
+		
+		if (watermark == null) {
+			log.info("### No watermark of "+ region +"/"+ zone +"/"+ instance +". Generating all cases.");
+			PriceSeries series = dao.findPriceSeries(region, zone, instance);
+			if (!series.isEmpty()) {
+				try {
+					// cases saved without watermark are replaced, not added to
+					writeCases(new BufferedCaseSink(dao.openCasesSink(region, zone, instance, true, series.getLastTime())), sink -> createCases(series, sink));
+				} catch (IOException e) {
+					log.error("Failed to save cases of "+ region +"/"+ zone +"/"+ instance +": "+ e.getMessage());
+				}
+				SurvivalCubeCache.getInstance().invalidate(region, zone, instance);
+			}
+			return;
+		}
+		
+		// base times of the last hour have no censored case yet
+		PriceSeries series = dao.findPriceSeries(region, zone, instance, watermark - TimeUnit.HOURS.toMillis(1) + 1);
+		
+		if (series.isEmpty() || series.getLastTime() <= watermark) {
+			log.info("### No records after "+ new Date(watermark) +" in "+ region +"/"+ zone +"/"+ instance);
+			return;
+		}
+		
+		List<List<Case>> openCases = new ArrayList<>(addictions.length);
+		int removed = 0;
+		for (double addiction : addictions) {
+			openCases.add(dao.findOpenCases(region, zone, instance, addiction));
+			removed += openCases.get(openCases.size() - 1).size();
+		}
+		
+		CaseSink sink = new BufferedCaseSink(dao.openCasesDeltaSink(region, zone, instance, addictions, series.getLastTime()));
+		try {
+			writeCases(sink, s -> {
+				for (int k = 0; k < addictions.length; k++) {
+					createCasesFromWatermark(series, watermark, addictions[k], openCases.get(k), s);
+				}
+			});
+		} catch (IOException e) {
+			log.error("Failed to save cases of "+ region +"/"+ zone +"/"+ instance +": "+ e.getMessage());
+			return;
+		}
+		log.info("### "+ region +"/"+ zone +"/"+ instance +": "+ series.size() +" records from "+ new Date(watermark) +", "+ removed +" cases removed, "+ sink.getCount() +" added.");
+		
+		SurvivalCubeCache.getInstance().invalidate(region, zone, instance);
+	}
+	
+	/**
+	 * Cases to add after the watermark, from the records of the series after watermark - 1 hour and the censored 
+	 * cases saved up to the watermark. Together with the saved cases, without the censored ones, they are the cases 
+	 * of generating the whole series again.
+	 * <p>
+	 * Records up to the watermark are done when their higher price came up to the watermark. Otherwise they had 
+	 * a censored case (records of the last hour had none), where the prices up to the watermark are not higher, so the 
+	 * first higher price is looked for after the watermark in a {@link PriceMaxIndex}, with the skip continued from the saved case.
+	 */
+	public List<Case> createCasesFromWatermark(PriceSeries series, long watermark, double addiction, List<Case> openCases) {
+		ListCaseSink caseBasedList = new ListCaseSink();
+		createCasesFromWatermark(series, watermark, addiction, openCases, caseBasedList);
+		return caseBasedList.getCases();
+	}
+	
+	public void createCasesFromWatermark(PriceSeries series, long watermark, double addiction, List<Case> openCases, CaseSink caseBasedList) {
+		
+		int size = series.size();
+		int last = size - 1;
+		// last record of the previous generation
+		int watermarkIndex = series.indexOfFirstAfter(watermark) - 1;
+		
+		PriceMaxIndex maxIndex = new PriceMaxIndex(series);
+		
+		for (Case open : openCases) {
+			
+			double basePrice = open.getInitValue();
+			int skip = open.getSkipRecords() - watermarkIndex;
+			int j = maxIndex.indexOfFirstAbove(watermarkIndex + 1, basePrice);
+			
+			if (j < size) {
+				addRevokedCases(caseBasedList, open.getInitTime(), basePrice, addiction, skip + j, series.getTime(j), series.getPrice(j));
+			} else {
+				addCensoredCase(caseBasedList, open.getInitTime(), basePrice, addiction, skip + last, series.getTime(last), series.getPrice(last));
+			}
+		}
+		
+		int[] nextGreater = nextGreaterIndex(series.toPriceArray(), addiction);
+		
+		for (int i = 0; i < size; i++) {
+			
+			int j = nextGreater[i];
+			if (i <= watermarkIndex && j >= 0 && j <= watermarkIndex) {
+				// revoked up to the watermark, already saved
+				continue;
+			}
+			
+			double basePrice = series.getPrice(i) * addiction;
+			if (j >= 0) {
+				addRevokedCases(caseBasedList, series.getTime(i), basePrice, addiction, j - i, series.getTime(j), series.getPrice(j));
+			} else {
+				addCensoredCase(caseBasedList, series.getTime(i), basePrice, addiction, last - i, series.getTime(last), series.getPrice(last));
+			}
+		}
+	}
+	
+	/**
+	 * Original case generation: for each row scans forward until a higher price is found. O(n^2) per series.
+	 */
+	public List<Case> createCasesWithForwardScan(PriceSeries series, double addiction) {
+		ListCaseSink caseBasedList = new ListCaseSink();
+		createCasesWithForwardScan(series, addiction, caseBasedList);
+		return caseBasedList.getCases();
+	}
+	
+	public void createCasesWithForwardScan(PriceSeries series, double addiction, CaseSink caseBasedList) {
+		
+		int size = series.size();
+		int last = size - 1;
+		
+		for (int i = 0; i < size; i++) {
+			
+			long baseTime = series.getTime(i);
+			double basePrice = series.getPrice(i) * addiction;
 			
 			int skip = 0;
+			boolean isCensured = true;
 			
-			MySpotPrice lastRow = listOfChanges.get(listOfChanges.size() -1);
+			for (int j = i+1; j < size; j++) {
+				
+				skip++;
+				double comparablePrice = series.getPrice(j);
+				
+				if (comparablePrice > basePrice) {
+					isCensured = false;
+					addRevokedCases(caseBasedList, baseTime, basePrice, addiction, skip, series.getTime(j), comparablePrice);
+					break;
+				}
+				
+			}
 			
-			for (double addiction : addictions) {
+			if (isCensured) {
+				addCensoredCase(caseBasedList, baseTime, basePrice, addiction, skip, series.getTime(last), series.getPrice(last));
+			}
+			
+		}
+	}
+	
+	/**
+	 * Same cases as {@link #createCasesWithForwardScan(PriceSeries, double)}, but the first higher price of each row 
+	 * is taken from a "next greater price" index built with a monotonic stack. O(n log n) per series whatever the addiction, since the threshold of each row 
+	 * is binary searched in the stack.
+	 */
+	public List<Case> createCasesWithNextGreaterIndex(PriceSeries series, double addiction) {
+		return createCases(series, addiction, nextGreaterIndex(series.toPriceArray(), addiction));
+	}
+	
+	/**
+	 * Cases of all addictions, in the order of the addictions, each list the same of 
+	 * {@link #createCasesWithNextGreaterIndex(PriceSeries, double)}. The higher prices of all addictions are found
+	 * in one pass over the series by {@link #nextGreaterIndex(double[], double[])}.
+	 */
+	public List<List<Case>> createCasesForAddictions(PriceSeries series, double[] addictions) {
+		
+		int[][] nextGreater = nextGreaterIndex(series.toPriceArray(), addictions);
+		
+		List<List<Case>> casesByAddiction = new ArrayList<>(addictions.length);
+		for (int k = 0; k < addictions.length; k++) {
+			casesByAddiction.add(createCases(series, addictions[k], nextGreater[k]));
+		}
+		return casesByAddiction;
+	}
+	
+	private List<Case> createCases(PriceSeries series, double addiction, int[] nextGreater) {
+		ListCaseSink caseBasedList = new ListCaseSink();
+		createCases(series, addiction, nextGreater, caseBasedList);
+		return caseBasedList.getCases();
+	}
+	
+	private void createCases(PriceSeries series, double addiction, int[] nextGreater, CaseSink caseBasedList) {
+		
+		int size = series.size();
+		int last = size - 1;
+		
+		for (int i = 0; i < size; i++) {
+			
+			double basePrice = series.getPrice(i) * addiction;
+			int j = nextGreater[i];
+			
+			if (j >= 0) {
+				addRevokedCases(caseBasedList, series.getTime(i), basePrice, addiction, j - i, series.getTime(j), series.getPrice(j));
+			} else {
+				addCensoredCase(caseBasedList, series.getTime(i), basePrice, addiction, last - i, series.getTime(last), series.getPrice(last));
+			}
+		}
+	}
+	
+	/**
+	 * Same cases, in the same order, as {@link #createCasesWithNextGreaterIndex(PriceSeries, double)}, with the series
+	 * split in chunks of {@link #chunkSize} rows processed on the fork/join pool, so one long series does not run in a single thread.
+	 * <p>
+	 * Each chunk finds the first higher price of its rows inside the chunk with the monotonic stack. Rows without one
+	 * look ahead past the end of the chunk in a {@link PriceMaxIndex} of the whole series, shared by all chunks.
+	 */
+	public List<Case> createCasesInParallel(PriceSeries series, double addiction, ForkJoinPool pool) {
+		ListCaseSink caseBasedList = new ListCaseSink();
+		createCasesInParallel(series, addiction, pool, caseBasedList);
+		return caseBasedList.getCases();
+	}
+	
+	/**
+	 * At most the parallelism of the pool + 1 chunks are in flight. Each one generates into a {@link ChunkCaseBuffer}, 
+	 * drained to the sink in order, so only the bounded buffers of the chunks in flight are held, whatever the length of 
+	 * the series. A failure stops the chunks still in flight.
+	 */
+	public void createCasesInParallel(PriceSeries series, double addiction, ForkJoinPool pool, CaseSink sink) {
+		
+		int size = series.size();
+		double[] prices = series.toPriceArray();
+		PriceMaxIndex maxIndex = new PriceMaxIndex(series);
+		
+		int window = pool.getParallelism() + 1;
+		ArrayDeque<ChunkCaseBuffer> chunks = new ArrayDeque<>(window);
+		
+		int from = 0;
+		try {
+			while (from < size || !chunks.isEmpty()) {
 				
-				log.debug("Processing with addiction of "+ addiction);
+				while (from < size && chunks.size() < window) {
+					int chunkFrom = from;
+					int chunkTo = (int) Math.min((long) from + chunkSize, size);
+					ChunkCaseBuffer chunk = new ChunkCaseBuffer(chunkSink -> createCasesOfChunk(series, prices, maxIndex, addiction, chunkFrom, chunkTo, chunkSink));
+					pool.execute(chunk);
+					chunks.add(chunk);
+					from = chunkTo;
+				}
 				
-				for (int i = 0; i < listOfChanges.size(); i++) {
-					
-					MySpotPrice row1 = listOfChanges.get(i);
-					
-					Calendar baseTime = Calendar.getInstance();
-					baseTime.setTimeInMillis(row1.getTimestamp().getTime());
-					double basePrice = Double.valueOf(row1.getSpotPrice()) * addiction;
-					
-					skip = 0;
-					boolean isCensured = true;
-					
-					for (int j = i+1; j < listOfChanges.size(); j++) {
-						
-						skip++;
-						MySpotPrice row2 = listOfChanges.get(j);
-						
-						Calendar comparableTime = Calendar.getInstance();
-						comparableTime.setTimeInMillis(row2.getTimestamp().getTime());
-						double comparablePrice = Double.valueOf(row2.getSpotPrice());
-						
-						if (comparablePrice > basePrice) {
-							
-							isCensured = false;
-							
-							int minutesBetween = Minutes.minutesBetween(new DateTime(baseTime.getTimeInMillis()), new DateTime(comparableTime.getTimeInMillis())).getMinutes();
-							
-							if (minutesBetween >= 60) {
-								
-								Case newCase = new Case(region, zone, instance);
-								newCase.setDayOfWeek(baseTime.get(Calendar.DAY_OF_WEEK));
-								newCase.setHourOfDay(baseTime.get(Calendar.HOUR_OF_DAY));
-								newCase.setAdditionAllowed(addiction);
-								newCase.setTimeToRevocation(minutesBetween);
-								newCase.setSkipRecords(skip);
-								newCase.setInitValue(basePrice);
-								newCase.setEndValue(comparablePrice);
-								newCase.setInitTime(baseTime.getTimeInMillis());
-								newCase.setEndTime(comparableTime.getTimeInMillis());
-								newCase.setCensored(false);
-								
-								caseBasedList.add(newCase);
-								
-								boolean newCasesExists = true;
-								
-								Calendar newBaseTime = (Calendar) baseTime.clone();
-								
-								while (newCasesExists) {
-									
-									newBaseTime.add(Calendar.HOUR, 1);
-									
-									minutesBetween = Minutes.minutesBetween(new DateTime(newBaseTime.getTimeInMillis()), new DateTime(comparableTime.getTimeInMillis())).getMinutes();
-									if (minutesBetween >= 60) {
-										
-										Case newCaseOverTime = new Case(region, zone, instance);
-										newCaseOverTime.setDayOfWeek(newBaseTime.get(Calendar.DAY_OF_WEEK));
-										newCaseOverTime.setHourOfDay(newBaseTime.get(Calendar.HOUR_OF_DAY));
-										newCaseOverTime.setAdditionAllowed(0);
-										newCaseOverTime.setTimeToRevocation(minutesBetween);
-										newCaseOverTime.setSkipRecords(0);
-										newCaseOverTime.setInitValue(basePrice);
-										newCaseOverTime.setEndValue(comparablePrice);
-										newCaseOverTime.setInitTime(newBaseTime.getTimeInMillis());
-										newCaseOverTime.setEndTime(comparableTime.getTimeInMillis());
-										newCaseOverTime.setCensored(false);
-										
-										caseBasedList.add(newCaseOverTime);
-										
-									} else {
-										newCasesExists = false;
-									}
-									
-								}
-								
-							}
-							break;
-						}
-						
+				chunks.peek().drainTo(sink);
+				chunks.poll();
+			}
+		} finally {
+			// only after a failure
+			for (ChunkCaseBuffer chunk : chunks) {
+				chunk.discard();
+			}
+		}
+	}
+	
+	private void createCasesOfChunk(PriceSeries series, double[] prices, PriceMaxIndex maxIndex, double addiction, int from, int to, CaseSink caseBasedList) {
+		
+		int size = series.size();
+		int last = size - 1;
+		
+		int[] nextGreater = nextGreaterIndex(prices, addiction, from, to);
+		
+		for (int i = from; i < to; i++) {
+			
+			double basePrice = series.getPrice(i) * addiction;
+			int j = nextGreater[i - from];
+			if (j < 0) {
+				// lookahead past the chunk
+				j = maxIndex.indexOfFirstAbove(to, basePrice);
+				if (j == size) {
+					j = -1;
+				}
+			}
+			
+			if (j >= 0) {
+				addRevokedCases(caseBasedList, series.getTime(i), basePrice, addiction, j - i, series.getTime(j), series.getPrice(j));
+			} else {
+				addCensoredCase(caseBasedList, series.getTime(i), basePrice, addiction, last - i, series.getTime(last), series.getPrice(last));
+			}
+		}
+	}
+	
+	/**
+	 * For each position i returns the first j > i where prices[j] > prices[i] * addiction, or -1 when there is none.
+	 * <p>
+	 * Walks the series backwards keeping a stack of candidate positions. A position is dropped as soon as a closer
+	 * position with an equal or higher price is pushed, so prices in the stack strictly increase from top to bottom
+	 * and the answer is the topmost position above the threshold (binary searched).
+	 */
+	public static int[] nextGreaterIndex(double[] prices, double addiction) {
+		return nextGreaterIndex(prices, addiction, 0, prices.length);
+	}
+	
+	/**
+	 * Same as {@link #nextGreaterIndex(double[], double)} for the positions from (inclusive) to (exclusive), looking
+	 * only inside them. Position i is returned at i - from.
+	 */
+	public static int[] nextGreaterIndex(double[] prices, double addiction, int from, int to) {
+		
+		int[] next = new int[to - from];
+		int[] stack = new int[to - from];
+		int top = -1;
+		
+		for (int i = to - 1; i >= from; i--) {
+			
+			double threshold = prices[i] * addiction;
+			
+			if (top >= 0 && prices[stack[top]] > threshold) {
+				next[i - from] = stack[top];
+			} else if (top < 0 || prices[stack[0]] <= threshold) {
+				next[i - from] = -1;
+			} else {
+				// stack[0] is above the threshold and stack[top] is not
+				int low = 0;
+				int high = top;
+				while (high - low > 1) {
+					int mid = (low + high) >>> 1;
+					if (prices[stack[mid]] > threshold) {
+						low = mid;
+					} else {
+						high = mid;
 					}
-					
-					if (isCensured) {
-						
-						int minutesBetween = Minutes.minutesBetween(new DateTime(baseTime.getTimeInMillis()), new DateTime(lastRow.getTimestamp().getTime())).getMinutes();
-						
-						if (minutesBetween >= 60) {
-							
-							Case newCase = new Case(region, zone, instance);
-							newCase.setInstance(instance);
-							newCase.setDayOfWeek(baseTime.get(Calendar.DAY_OF_WEEK));
-							newCase.setHourOfDay(baseTime.get(Calendar.HOUR_OF_DAY));
-							newCase.setAdditionAllowed(addiction);
-							newCase.setTimeToRevocation(minutesBetween);
-							newCase.setSkipRecords(skip);
-							newCase.setInitTime(baseTime.getTimeInMillis());
-							newCase.setEndTime(lastRow.getTimestamp().getTime());
-							newCase.setInitValue(basePrice);
-							newCase.setEndValue(Double.valueOf(lastRow.getSpotPrice()));
-							newCase.setCensored(true);
-							
-							caseBasedList.add(newCase);
+				}
+				next[i - from] = stack[low];
+			}
+			
+			while (top >= 0 && prices[stack[top]] <= prices[i]) {
+				top--;
+			}
+			stack[++top] = i;
+		}
+		
+		return next;
+	}
+	
+	/**
+	 * Same as {@link #nextGreaterIndex(double[], double)} for many addictions, with one walk over the prices: the 
+	 * stack does not depend on the addiction, only the threshold searched in it. Higher thresholds are answered deeper 
+	 * in the stack, so with the addictions in ascending order each search starts where the previous one ended.
+	 * 
+	 * @return first higher position of each addiction (in the given order) and position.
+	 */
+	public static int[][] nextGreaterIndex(double[] prices, double[] addictions) {
+		
+		int k = addictions.length;
+		int[][] next = new int[k][prices.length];
+		
+		// addictions in ascending order
+		Integer[] order = new Integer[k];
+		for (int a = 0; a < k; a++) {
+			order[a] = a;
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(addictions[a], addictions[b]));
+		
+		int[] stack = new int[prices.length];
+		int top = -1;
+		
+		for (int i = prices.length - 1; i >= 0; i--) {
+			
+			// answers of the next addictions are at or below this stack position
+			int bound = top;
+			
+			for (int a = 0; a < k; a++) {
+				
+				int[] nextOfAddiction = next[order[a]];
+				double threshold = prices[i] * addictions[order[a]];
+				
+				if (bound < 0 || prices[stack[0]] <= threshold) {
+					// nothing higher for this and the higher addictions
+					for (int b = a; b < k; b++) {
+						next[order[b]][i] = -1;
+					}
+					break;
+				}
+				
+				if (prices[stack[bound]] <= threshold) {
+					// stack[0] is above the threshold and stack[bound] is not
+					int low = 0;
+					int high = bound;
+					while (high - low > 1) {
+						int mid = (low + high) >>> 1;
+						if (prices[stack[mid]] > threshold) {
+							low = mid;
+						} else {
+							high = mid;
 						}
 					}
-					
+					bound = low;
 				}
+				nextOfAddiction[i] = stack[bound];
+			}
+			
+			while (top >= 0 && prices[stack[top]] <= prices[i]) {
+				top--;
+			}
+			stack[++top] = i;
+		}
+		
+		return next;
+	}
+	
+	private void addRevokedCases(CaseSink caseBasedList, long baseTime, double basePrice, double addiction, int skip, long endTime, double endPrice) {
+		
+		int minutesBetween = TimeBuckets.minutesBetween(baseTime, endTime);
+		
+		if (minutesBetween >= 60) {
+			
+			Case newCase = new Case(region, zone, instance);
+			newCase.setDayOfWeek(timeBuckets.dayOfWeek(baseTime));
+			newCase.setHourOfDay(timeBuckets.hourOfDay(baseTime));
+			newCase.setAdditionAllowed(addiction);
+			newCase.setTimeToRevocation(minutesBetween);
+			newCase.setSkipRecords(skip);
+			newCase.setInitValue(basePrice);
+			newCase.setEndValue(endPrice);
+			newCase.setInitTime(baseTime);
+			newCase.setEndTime(endTime);
+			newCase.setCensored(false);
+			
+			caseBasedList.accept(newCase);
+			
+			boolean newCasesExists = true;
+			long overTime = baseTime;
+			
+			while (newCasesExists) {
 				
-				log.info(caseBasedList.size() +" cases generated from "+ (listOfChanges != null ? listOfChanges.size() : 0) +" records in "+ region +"/"+ zone +"/"+ instance );
-				if (saveToDatabase) {
-					saveCasesToBD(caseBasedList);
+				overTime += TimeBuckets.HOUR;
+				
+				minutesBetween = TimeBuckets.minutesBetween(overTime, endTime);
+				if (minutesBetween >= 60) {
+					
+					Case newCaseOverTime = new Case(region, zone, instance);
+					newCaseOverTime.setDayOfWeek(timeBuckets.dayOfWeek(overTime));
+					newCaseOverTime.setHourOfDay(timeBuckets.hourOfDay(overTime));
+					newCaseOverTime.setAdditionAllowed(0);
+					newCaseOverTime.setTimeToRevocation(minutesBetween);
+					newCaseOverTime.setSkipRecords(0);
+					newCaseOverTime.setInitValue(basePrice);
+					newCaseOverTime.setEndValue(endPrice);
+					newCaseOverTime.setInitTime(overTime);
+					newCaseOverTime.setEndTime(endTime);
+					newCaseOverTime.setCensored(false);
+					
+					caseBasedList.accept(newCaseOverTime);
+					
 				} else {
-					saveCasesToFile(caseBasedList);
+					newCasesExists = false;
 				}
-				caseBasedList.clear();
 				
 			}
 			
-			
 		}
+	}
+	
+	private void addCensoredCase(CaseSink caseBasedList, long baseTime, double basePrice, double addiction, int skip, long endTime, double endPrice) {
 		
-		log.info("### End of processing "+ region +"/"+ zone +"/"+ instance);
-		
+		int minutesBetween = TimeBuckets.minutesBetween(baseTime, endTime);
 		
+		if (minutesBetween >= 60) {
+			
+			Case newCase = new Case(region, zone, instance);
+			newCase.setDayOfWeek(timeBuckets.dayOfWeek(baseTime));
+			newCase.setHourOfDay(timeBuckets.hourOfDay(baseTime));
+			newCase.setAdditionAllowed(addiction);
+			newCase.setTimeToRevocation(minutesBetween);
+			newCase.setSkipRecords(skip);
+			newCase.setInitTime(baseTime);
+			newCase.setEndTime(endTime);
+			newCase.setInitValue(basePrice);
+			newCase.setEndValue(endPrice);
+			newCase.setCensored(true);
+			
+			caseBasedList.accept(newCase);
+		}
 	}
 	
-	private void saveCasesToBD(List<Case> caseBasedList) throws SQLException {
-		dao.saveSpotCasesBatch(caseBasedList);
-	}
-
 	public void saveCasesToFile(List<Case> caseList) {
 		
 		if (caseList != null && !caseList.isEmpty()) {
@@ -378,10 +819,13 @@ public class AWSCBRCreator extends Thread implements CaseBasedCreator, Runnable
 		try {
 			dao = new SpotDAO();
 			execute();
-			dao.closeConnection();
-		} catch (SQLException e) {
+		} catch (SQLException | RuntimeException e) {
 			log.error("Error when trying to execute AWSCRBCreator in "+ region +"/"+ zone +"/"+ instance+ ": "+ e.getMessage());
 			e.printStackTrace();
+		} finally {
+			if (dao != null) {
+				dao.closeConnection();
+			}
 		}
 	}
 	
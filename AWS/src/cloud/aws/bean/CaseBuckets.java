@@ -0,0 +1,110 @@
+package cloud.aws.bean;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import core.util.SurvivalCounts;
+
+/**
+ * Cases of one series (region/zone/instance) grouped by day of week and hour of day.
+ * <p>
+ * Each bucket holds primitive arrays of time to revocation, in ascending order, and censored flags,
+ * ready to be passed to the Kaplan-Meier estimators. Buckets are indexed as the experiment matrices:
+ * day of week from 1 (Sunday) to 7 as in {@link java.util.Calendar#DAY_OF_WEEK} and hour of day from 0 to 23.
+ */
+public class CaseBuckets {
+
+	public static final int DAYS = 8;
+	public static final int HOURS = 24;
+
+	private static final int[] EMPTY_TIMES = new int[0];
+	private static final boolean[] EMPTY_CENSORED = new boolean[0];
+
+	private String region;
+	private String zone;
+	private String instance;
+
+	private final int[][][] times = new int[DAYS][HOURS][];
+	private final boolean[][][] censored = new boolean[DAYS][HOURS][];
+
+	public CaseBuckets(String region, String zone, String instance) {
+		this.region = region;
+		this.zone = zone;
+		this.instance = instance;
+
+		for (int d = 0; d < DAYS; d++) {
+			for (int h = 0; h < HOURS; h++) {
+				times[d][h] = EMPTY_TIMES;
+				censored[d][h] = EMPTY_CENSORED;
+			}
+		}
+	}
+
+	/**
+	 * @param times time to revocation in ascending order.
+	 * @param censored censored flag of each time.
+	 */
+	public void setBucket(int dayOfWeek, int hourOfDay, int[] times, boolean[] censored) {
+		if (times.length != censored.length) {
+			throw new IllegalArgumentException("Time and censored sizes are different.");
+		}
+		this.times[dayOfWeek][hourOfDay] = times;
+		this.censored[dayOfWeek][hourOfDay] = censored;
+	}
+
+	public int[] getTimes(int dayOfWeek, int hourOfDay) {
+		return times[dayOfWeek][hourOfDay];
+	}
+
+	public boolean[] getCensored(int dayOfWeek, int hourOfDay) {
+		return censored[dayOfWeek][hourOfDay];
+	}
+
+	public int size(int dayOfWeek, int hourOfDay) {
+		return times[dayOfWeek][hourOfDay].length;
+	}
+
+	/**
+	 * @return death and censored counts of the bucket, mergeable with the counts of other buckets and series.
+	 */
+	public SurvivalCounts getCounts(int dayOfWeek, int hourOfDay) {
+		return SurvivalCounts.of(times[dayOfWeek][hourOfDay], censored[dayOfWeek][hourOfDay]);
+	}
+
+	/**
+	 * @return counts of the hours from hour (inclusive) to hour (inclusive) of a day of week merged.
+	 */
+	public SurvivalCounts getCounts(int dayOfWeek, int fromHour, int toHour) {
+		List<SurvivalCounts> counts = new ArrayList<>();
+		for (int h = fromHour; h <= toHour; h++) {
+			counts.add(getCounts(dayOfWeek, h));
+		}
+		return SurvivalCounts.mergeAll(counts);
+	}
+
+	/**
+	 * @return total of cases in all buckets.
+	 */
+	public int size() {
+		int size = 0;
+		for (int d = 0; d < DAYS; d++) {
+			for (int h = 0; h < HOURS; h++) {
+				size += times[d][h].length;
+			}
+		}
+		return size;
+	}
+
+	public String getRegion() {
+		return region;
+	}
+
+	public String getZone() {
+		return zone;
+	}
+
+	public String getInstance() {
+		return instance;
+	}
+
+}
@@ -0,0 +1,124 @@
+package cloud.aws.bean;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import core.util.ParametricSurvival;
+import core.util.ParametricSurvival.Type;
+import core.util.SurvivalCounts;
+
+/**
+ * Exponential and Weibull models of all day of week x hour of day buckets of one series, the parametric
+ * counterpart of {@link SurvivalCube}: a few doubles per bucket and O(1) minutes lookups.
+ * <p>
+ * Buckets are fitted on a fork/join pool. Buckets are indexed as in {@link CaseBuckets}; a bucket has no model
+ * when it has no deaths.
+ */
+public class ParametricSurvivalCube {
+
+	private static final int BUCKETS = (CaseBuckets.DAYS - 1) * CaseBuckets.HOURS;
+	// buckets fitted by one task without splitting
+	private static final int THRESHOLD = 4;
+
+	private final String region;
+	private final String zone;
+	private final String instance;
+
+	private final ParametricSurvival[][] exponential = new ParametricSurvival[CaseBuckets.DAYS][CaseBuckets.HOURS];
+	private final ParametricSurvival[][] weibull = new ParametricSurvival[CaseBuckets.DAYS][CaseBuckets.HOURS];
+
+	public ParametricSurvivalCube(CaseBuckets cases) {
+		this(cases, ForkJoinPool.commonPool());
+	}
+
+	public ParametricSurvivalCube(CaseBuckets cases, ForkJoinPool pool) {
+		this.region = cases.getRegion();
+		this.zone = cases.getZone();
+		this.instance = cases.getInstance();
+		pool.invoke(new FitTask(cases, 0, BUCKETS));
+	}
+
+	private class FitTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final CaseBuckets cases;
+		// buckets from (inclusive) to (exclusive), bucket b is day 1 + b / HOURS, hour b % HOURS
+		private final int from;
+		private final int to;
+
+		FitTask(CaseBuckets cases, int from, int to) {
+			this.cases = cases;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= THRESHOLD) {
+				for (int b = from; b < to; b++) {
+					fit(cases, 1 + b / CaseBuckets.HOURS, b % CaseBuckets.HOURS);
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new FitTask(cases, from, middle), new FitTask(cases, middle, to));
+		}
+	}
+
+	private void fit(CaseBuckets cases, int d, int h) {
+		if (cases.size(d, h) == 0) {
+			return;
+		}
+		SurvivalCounts counts = cases.getCounts(d, h);
+		exponential[d][h] = ParametricSurvival.fit(Type.EXPONENTIAL, counts);
+		weibull[d][h] = ParametricSurvival.fit(Type.WEIBULL, counts);
+	}
+
+	public boolean hasModel(int dayOfWeek, int hourOfDay) {
+		return weibull[dayOfWeek][hourOfDay] != null;
+	}
+
+	/**
+	 * @return the model of the type, or null when the bucket has no model.
+	 */
+	public ParametricSurvival getModel(int dayOfWeek, int hourOfDay, Type type) {
+		return type == Type.EXPONENTIAL ? exponential[dayOfWeek][hourOfDay] : weibull[dayOfWeek][hourOfDay];
+	}
+
+	/**
+	 * @return the model with the lowest AIC, or null when the bucket has no model.
+	 */
+	public ParametricSurvival getBestModel(int dayOfWeek, int hourOfDay) {
+		ParametricSurvival e = exponential[dayOfWeek][hourOfDay];
+		ParametricSurvival w = weibull[dayOfWeek][hourOfDay];
+		if (e == null || w == null) {
+			return w != null ? w : e;
+		}
+		return e.getAic() <= w.getAic() ? e : w;
+	}
+
+	/**
+	 * Minutes until failure at a confidence level by the best model.
+	 * @see ParametricSurvival#getTime(double)
+	 *
+	 * @return the minutes, or null when the bucket has no model.
+	 */
+	public Integer getMinutes(int dayOfWeek, int hourOfDay, double confidence) {
+		ParametricSurvival model = getBestModel(dayOfWeek, hourOfDay);
+		return model != null ? model.getTime(confidence) : null;
+	}
+
+	public String getRegion() {
+		return region;
+	}
+
+	public String getZone() {
+		return zone;
+	}
+
+	public String getInstance() {
+		return instance;
+	}
+
+}
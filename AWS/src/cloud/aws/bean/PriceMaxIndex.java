@@ -0,0 +1,160 @@
+package cloud.aws.bean;
+
+import java.util.Arrays;
+
+/**
+ * Segment tree of price maxima over a {@link PriceSeries}, answering "first price above a bid after a time"
+ * in O(log n) instead of scanning the rest of the series.
+ * <p>
+ * Built in O(n) with 2n doubles of memory. Indexes are relative to the series, as in {@link PriceSeries}, and
+ * queries without answer return {@link #size()}.
+ */
+public class PriceMaxIndex {
+
+	private final PriceSeries series;
+	private final int size;
+	// leaves start at 'leaves', node k has children 2k and 2k+1, node 1 is the root
+	private final int leaves;
+	private final double[] tree;
+
+	public PriceMaxIndex(PriceSeries series) {
+		this.series = series;
+		this.size = series.size();
+
+		int leaves = 1;
+		while (leaves < size) {
+			leaves <<= 1;
+		}
+		this.leaves = leaves;
+		this.tree = new double[leaves * 2];
+
+		Arrays.fill(tree, leaves, leaves * 2, Double.NEGATIVE_INFINITY);
+		for (int i = 0; i < size; i++) {
+			tree[leaves + i] = series.getPrice(i);
+		}
+		for (int k = leaves - 1; k >= 1; k--) {
+			tree[k] = Math.max(tree[2 * k], tree[2 * k + 1]);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public PriceSeries getSeries() {
+		return series;
+	}
+
+	/**
+	 * @return max price from index (inclusive) to index (exclusive), or negative infinity for an empty range.
+	 */
+	public double max(int fromIndex, int toIndex) {
+		if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+			throw new IndexOutOfBoundsException("From: "+ fromIndex +", to: "+ toIndex +", size: "+ size);
+		}
+		double max = Double.NEGATIVE_INFINITY;
+		for (int low = fromIndex + leaves, high = toIndex + leaves; low < high; low >>= 1, high >>= 1) {
+			if ((low & 1) == 1) {
+				max = Math.max(max, tree[low++]);
+			}
+			if ((high & 1) == 1) {
+				max = Math.max(max, tree[--high]);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @return index of the first point at or after fromIndex with price greater than the given price, or {@link #size()} if none.
+	 */
+	public int indexOfFirstAbove(int fromIndex, double price) {
+		return indexOfFirstAbove(fromIndex, price, false);
+	}
+
+	/**
+	 * Same as {@link #indexOfFirstAbove(int, double)}, comparing prices as floats, as the experiments do.
+	 */
+	public int indexOfFirstAbove(int fromIndex, float price) {
+		return indexOfFirstAbove(fromIndex, price, true);
+	}
+
+	/**
+	 * @return index of the first point at or after the given time with price greater than the given price, or {@link #size()} if none.
+	 */
+	public int indexOfFirstAboveSince(long time, double price) {
+		return indexOfFirstAbove(series.indexOfFirstAtOrAfter(time), price, false);
+	}
+
+	/**
+	 * Same as {@link #indexOfFirstAboveSince(long, double)}, comparing prices as floats, as the experiments do.
+	 */
+	public int indexOfFirstAboveSince(long time, float price) {
+		return indexOfFirstAbove(series.indexOfFirstAtOrAfter(time), price, true);
+	}
+
+	/**
+	 * Batch of (time, price) queries.
+	 *
+	 * @return for each query, the index of the first point at or after the time with price greater than the price, or {@link #size()} if none.
+	 */
+	public int[] indexOfFirstAboveSince(long[] times, double[] prices) {
+		if (times.length != prices.length) {
+			throw new IllegalArgumentException("Times and prices sizes are different.");
+		}
+		int[] indexes = new int[times.length];
+		for (int q = 0; q < times.length; q++) {
+			indexes[q] = indexOfFirstAbove(series.indexOfFirstAtOrAfter(times[q]), prices[q], false);
+		}
+		return indexes;
+	}
+
+	/**
+	 * Batch of (time, price) queries comparing prices as floats.
+	 * @see #indexOfFirstAboveSince(long[], double[])
+	 */
+	public int[] indexOfFirstAboveSince(long[] times, float[] prices) {
+		if (times.length != prices.length) {
+			throw new IllegalArgumentException("Times and prices sizes are different.");
+		}
+		int[] indexes = new int[times.length];
+		for (int q = 0; q < times.length; q++) {
+			indexes[q] = indexOfFirstAbove(series.indexOfFirstAtOrAfter(times[q]), prices[q], true);
+		}
+		return indexes;
+	}
+
+	private int indexOfFirstAbove(int fromIndex, double price, boolean asFloat) {
+
+		if (fromIndex < 0) {
+			throw new IndexOutOfBoundsException("From: "+ fromIndex);
+		}
+		if (fromIndex >= size) {
+			return size;
+		}
+
+		int node = fromIndex + leaves;
+		if (isAbove(tree[node], price, asFloat)) {
+			return fromIndex;
+		}
+
+		// climb until a right sibling holds a greater price
+		while (node > 1) {
+			if ((node & 1) == 0 && isAbove(tree[node + 1], price, asFloat)) {
+				node++;
+				// descend to the leftmost leaf above the price
+				while (node < leaves) {
+					node = isAbove(tree[2 * node], price, asFloat) ? 2 * node : 2 * node + 1;
+				}
+				return node - leaves;
+			}
+			node >>= 1;
+		}
+
+		return size;
+	}
+
+	private static boolean isAbove(double max, double price, boolean asFloat) {
+		return asFloat ? (float) max > (float) price : max > price;
+	}
+
+}
@@ -0,0 +1,256 @@
+package cloud.aws.bean;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import cloud.aws.util.AWSUtil;
+
+/**
+ * Price history of one series (region/zone/instance) in primitive arrays ordered by time.
+ * <p>
+ * A series can be sliced by time range with binary search. Slices share the arrays of the original series,
+ * and indexes are always relative to the slice.
+ */
+public class PriceSeries {
+
+	public interface PriceConsumer {
+		void accept(long time, double price);
+	}
+
+	/**
+	 * Forward only cursor over the points of a series.
+	 * <pre>
+	 * PriceSeries.Cursor c = series.cursor();
+	 * while (c.next()) {
+	 *     c.getTime(); c.getPrice();
+	 * }
+	 * </pre>
+	 */
+	public class Cursor {
+
+		private int index = -1;
+
+		public boolean next() {
+			return ++index < size();
+		}
+
+		public boolean hasNext() {
+			return index + 1 < size();
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public long getTime() {
+			checkPosition();
+			return times[from + index];
+		}
+
+		public double getPrice() {
+			checkPosition();
+			return prices[from + index];
+		}
+
+		private void checkPosition() {
+			if (index < 0 || index >= size()) {
+				throw new NoSuchElementException();
+			}
+		}
+	}
+
+	private final String region;
+	private final String zone;
+	private final String instance;
+
+	private final long[] times;
+	private final double[] prices;
+	private final int from;
+	private final int to;
+
+	/**
+	 * @param times epoch milliseconds in ascending order.
+	 * @param prices price of each time.
+	 */
+	public PriceSeries(String region, String zone, String instance, long[] times, double[] prices) {
+		this(region, zone, instance, times, prices, 0, times.length);
+		if (times.length != prices.length) {
+			throw new IllegalArgumentException("Times and prices sizes are different.");
+		}
+	}
+
+	private PriceSeries(String region, String zone, String instance, long[] times, double[] prices, int from, int to) {
+		this.region = region;
+		this.zone = zone;
+		this.instance = instance;
+		this.times = times;
+		this.prices = prices;
+		this.from = from;
+		this.to = to;
+	}
+
+	public int size() {
+		return to - from;
+	}
+
+	public boolean isEmpty() {
+		return to == from;
+	}
+
+	public long getTime(int index) {
+		return times[from + index];
+	}
+
+	public double getPrice(int index) {
+		return prices[from + index];
+	}
+
+	public long getFirstTime() {
+		return times[from];
+	}
+
+	public long getLastTime() {
+		return times[to - 1];
+	}
+
+	/**
+	 * @return index of the first point with time greater than or equal to the given time, or {@link #size()} if none.
+	 */
+	public int indexOfFirstAtOrAfter(long time) {
+		int low = from;
+		int high = to;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (times[mid] < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low - from;
+	}
+
+	/**
+	 * @return index of the first point with time greater than the given time, or {@link #size()} if none.
+	 */
+	public int indexOfFirstAfter(long time) {
+		int low = from;
+		int high = to;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (times[mid] <= time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low - from;
+	}
+
+	/**
+	 * Points between both times, inclusive, as the BETWEEN of the queries.
+	 */
+	public PriceSeries slice(long initTime, long limitTime) {
+		int start = indexOfFirstAtOrAfter(initTime);
+		int end = Math.max(start, indexOfFirstAfter(limitTime));
+		return subSeries(start, end);
+	}
+
+	/**
+	 * Points from index (inclusive) to index (exclusive).
+	 */
+	public PriceSeries subSeries(int fromIndex, int toIndex) {
+		if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+			throw new IndexOutOfBoundsException("From: "+ fromIndex +", to: "+ toIndex +", size: "+ size());
+		}
+		return new PriceSeries(region, zone, instance, times, prices, from + fromIndex, from + toIndex);
+	}
+
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	public void forEach(PriceConsumer consumer) {
+		for (int i = from; i < to; i++) {
+			consumer.accept(times[i], prices[i]);
+		}
+	}
+
+	/**
+	 * @return copy of the times of this series.
+	 */
+	public long[] toTimeArray() {
+		return Arrays.copyOfRange(times, from, to);
+	}
+
+	/**
+	 * @return copy of the prices of this series.
+	 */
+	public double[] toPriceArray() {
+		return Arrays.copyOfRange(prices, from, to);
+	}
+
+	public double min() {
+		double min = Double.MAX_VALUE;
+		for (int i = from; i < to; i++) {
+			min = Math.min(min, prices[i]);
+		}
+		return min;
+	}
+
+	public double max() {
+		double max = -Double.MAX_VALUE;
+		for (int i = from; i < to; i++) {
+			max = Math.max(max, prices[i]);
+		}
+		return max;
+	}
+
+	public double mean() {
+		double sum = 0;
+		for (int i = from; i < to; i++) {
+			sum += prices[i];
+		}
+		return size() > 0 ? sum / size() : 0;
+	}
+
+	public double median() {
+		if (isEmpty()) {
+			return 0;
+		}
+		double[] sorted = toPriceArray();
+		Arrays.sort(sorted);
+		int half = sorted.length / 2;
+		return sorted.length % 2 == 1 ? sorted[half] : (sorted[half - 1] + sorted[half]) / 2;
+	}
+
+	public double standardDeviation() {
+		if (isEmpty()) {
+			return Double.NaN;
+		}
+		double mean = mean();
+		double sum = 0;
+		for (int i = from; i < to; i++) {
+			sum += Math.pow(prices[i] - mean, 2);
+		}
+		return Math.sqrt(sum / size());
+	}
+
+	public String getRegion() {
+		return region;
+	}
+
+	public String getZone() {
+		return zone;
+	}
+
+	public String getInstance() {
+		return instance;
+	}
+
+	@Override
+	public String toString() {
+		return "[Series="+ AWSUtil.fullInstanceName(region, zone, instance) +", size="+ size() +"]";
+	}
+
+}
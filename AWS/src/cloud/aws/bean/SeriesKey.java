@@ -0,0 +1,76 @@
+package cloud.aws.bean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import cloud.aws.util.AWSUtil;
+
+/**
+ * Region, zone and instance of a price series.
+ */
+public class SeriesKey {
+
+	private final String region;
+	private final String zone;
+	private final String instance;
+
+	public SeriesKey(String region, String zone, String instance) {
+		if (region == null || zone == null || instance == null) {
+			throw new IllegalArgumentException("Region/Zone/Instance are required.");
+		}
+		this.region = region;
+		this.zone = zone;
+		this.instance = instance;
+	}
+
+	/**
+	 * @return all region x zone x instance combinations, in this order.
+	 */
+	public static List<SeriesKey> combinations(String[] regions, String[] zones, List<String> instances) {
+		List<SeriesKey> keys = new ArrayList<>(regions.length * zones.length * instances.size());
+		for (String region : regions) {
+			for (String zone : zones) {
+				for (String instance : instances) {
+					keys.add(new SeriesKey(region, zone, instance));
+				}
+			}
+		}
+		return keys;
+	}
+
+	public String getRegion() {
+		return region;
+	}
+
+	public String getZone() {
+		return zone;
+	}
+
+	public String getInstance() {
+		return instance;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof SeriesKey)) {
+			return false;
+		}
+		SeriesKey other = (SeriesKey) obj;
+		return region.equals(other.region) && zone.equals(other.zone) && instance.equals(other.instance);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(region, zone, instance);
+	}
+
+	@Override
+	public String toString() {
+		return AWSUtil.fullInstanceName(region, zone, instance);
+	}
+
+}
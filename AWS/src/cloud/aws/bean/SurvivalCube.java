@@ -0,0 +1,140 @@
+package cloud.aws.bean;
+
+import java.util.List;
+
+import core.util.KaplanMeierEstimator;
+import core.util.KaplanMeierEstimator.Interval;
+import core.util.SurvivalFunction;
+
+/**
+ * Kaplan-Meier curves of all day of week x hour of day buckets of one series, computed once from its {@link CaseBuckets}.
+ * <p>
+ * Curves are kept as {@link SurvivalFunction} and are immutable, so a cube can be shared by any number of threads.
+ * Buckets are indexed as in {@link CaseBuckets}. A bucket has no curve when the estimator can not compute it
+ * (less than two cases, or no time greater than zero).
+ */
+public class SurvivalCube {
+
+	private final String region;
+	private final String zone;
+	private final String instance;
+
+	private final int[][] caseCount = new int[CaseBuckets.DAYS][CaseBuckets.HOURS];
+	private final SurvivalFunction[][] functions = new SurvivalFunction[CaseBuckets.DAYS][CaseBuckets.HOURS];
+
+	private final long estimatedBytes;
+
+	public SurvivalCube(CaseBuckets cases) {
+		this.region = cases.getRegion();
+		this.zone = cases.getZone();
+		this.instance = cases.getInstance();
+
+		long bytes = 0;
+		for (int d = 1; d < CaseBuckets.DAYS; d++) {
+			for (int h = 0; h < CaseBuckets.HOURS; h++) {
+				caseCount[d][h] = cases.size(d, h);
+				if (caseCount[d][h] < 2) {
+					continue;
+				}
+				try {
+					functions[d][h] = SurvivalFunction.compute(cases.getTimes(d, h), cases.getCensored(d, h));
+					bytes += functions[d][h].getEstimatedBytes();
+				} catch (RuntimeException e) {
+					// no curve for this bucket
+				}
+			}
+		}
+		this.estimatedBytes = bytes;
+	}
+
+	/**
+	 * @return number of buckets with a curve.
+	 */
+	public int getCurveCount() {
+		int count = 0;
+		for (int d = 1; d < CaseBuckets.DAYS; d++) {
+			for (int h = 0; h < CaseBuckets.HOURS; h++) {
+				if (functions[d][h] != null) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	public boolean hasCurve(int dayOfWeek, int hourOfDay) {
+		return functions[dayOfWeek][hourOfDay] != null;
+	}
+
+	/**
+	 * @return number of cases used to compute the curve of the bucket.
+	 */
+	public int getCaseCount(int dayOfWeek, int hourOfDay) {
+		return caseCount[dayOfWeek][hourOfDay];
+	}
+
+	/**
+	 * @return the survival function of the bucket, or null when the bucket has no curve.
+	 */
+	public SurvivalFunction getFunction(int dayOfWeek, int hourOfDay) {
+		return functions[dayOfWeek][hourOfDay];
+	}
+
+	/**
+	 * @return the curve of the bucket as returned by {@link KaplanMeierEstimator#compute(int[], boolean[])}
+	 * (censored times are not kept, only their count), or null when the bucket has no curve.
+	 */
+	public List<Interval> getCurve(int dayOfWeek, int hourOfDay) {
+		return hasCurve(dayOfWeek, hourOfDay) ? functions[dayOfWeek][hourOfDay].toIntervals() : null;
+	}
+
+	/**
+	 * Minutes until failure at a confidence level.
+	 * @see SurvivalFunction#getTime(double)
+	 *
+	 * @return the minutes, or null when the bucket has no curve.
+	 */
+	public Integer getMinutes(int dayOfWeek, int hourOfDay, double confidence) {
+		return hasCurve(dayOfWeek, hourOfDay) ? functions[dayOfWeek][hourOfDay].getTime(confidence) : null;
+	}
+
+	/**
+	 * Minutes until failure at a confidence level, by the lower bound of the 95% confidence band.
+	 * @see SurvivalFunction#getTimeAtLowerBound(double)
+	 *
+	 * @return the minutes, or null when the bucket has no curve.
+	 */
+	public Integer getMinutesAtLowerBound(int dayOfWeek, int hourOfDay, double confidence) {
+		return hasCurve(dayOfWeek, hourOfDay) ? functions[dayOfWeek][hourOfDay].getTimeAtLowerBound(confidence) : null;
+	}
+
+	/**
+	 * Minutes until failure at several confidence levels.
+	 * @see SurvivalFunction#getTimes(double[])
+	 *
+	 * @return the minutes of each confidence, or null when the bucket has no curve.
+	 */
+	public int[] getMinutes(int dayOfWeek, int hourOfDay, double[] confidences) {
+		return hasCurve(dayOfWeek, hourOfDay) ? functions[dayOfWeek][hourOfDay].getTimes(confidences) : null;
+	}
+
+	/**
+	 * @return approximate memory used by the curves.
+	 */
+	public long getEstimatedBytes() {
+		return estimatedBytes;
+	}
+
+	public String getRegion() {
+		return region;
+	}
+
+	public String getZone() {
+		return zone;
+	}
+
+	public String getInstance() {
+		return instance;
+	}
+
+}
@@ -0,0 +1,151 @@
+package cloud.aws.dao;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+
+import core.db.PostgresDBConnection;
+import core.executor.cbr.Case;
+import core.executor.cbr.CaseSink;
+
+/**
+ * Streams the cases into a table with COPY FROM STDIN, in the CSV format of the files imported by 
+ * {@link PostgresDBConnection#copyFromCSV(String, java.io.File[])}, without writing a file first. 
+ * Rows are sent every {@link #BUFFER_SIZE} chars, nothing else of the cases is kept. Statements can run in the 
+ * transaction of the copy before it starts and before the commit on close; a failure or {@link #abort()} rolls 
+ * everything back.
+ */
+public class CopyCaseSink implements CaseSink {
+
+	private static final Logger log = LogManager.getLogger(CopyCaseSink.class);
+
+	public static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Statements run in the transaction of the copy.
+	 */
+	public interface Statements {
+		void execute(Connection con) throws SQLException;
+	}
+
+	private final String table;
+	private final Connection con;
+	private final CopyIn copyIn;
+	private final StringBuilder buffer = new StringBuilder(BUFFER_SIZE + 256);
+	private final Statements beforeCommit;
+
+	private long count = 0;
+	private boolean closed = false;
+
+	public CopyCaseSink(String table) throws SQLException {
+		this(table, null, null);
+	}
+
+	public CopyCaseSink(String table, Statements beforeCopy, Statements beforeCommit) throws SQLException {
+		this.table = table;
+		this.beforeCommit = beforeCommit;
+		this.con = PostgresDBConnection.getInstance().getConnectionFromPool();
+		try {
+			if (beforeCopy != null) {
+				beforeCopy.execute(con);
+			}
+			CopyManager copyManager = new CopyManager((BaseConnection) con);
+			this.copyIn = copyManager.copyIn("COPY "+ table +" FROM STDIN WITH DELIMITER ';' CSV HEADER");
+		} catch (SQLException e) {
+			try {
+				con.rollback();
+			} finally {
+				PostgresDBConnection.closeConnection(con);
+			}
+			throw e;
+		}
+		buffer.append(Case.toStringHead()).append('\n');
+	}
+
+	@Override
+	public void accept(Case c) {
+		buffer.append(c.toStringCase()).append('\n');
+		count++;
+		if (buffer.length() >= BUFFER_SIZE) {
+			try {
+				flush();
+			} catch (SQLException e) {
+				throw new IllegalStateException("Failed to copy cases to "+ table +": "+ e.getMessage(), e);
+			}
+		}
+	}
+
+	private void flush() throws SQLException {
+		byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+		copyIn.writeToCopy(bytes, 0, bytes.length);
+		buffer.setLength(0);
+	}
+
+	@Override
+	public long getCount() {
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			flush();
+			long rows = copyIn.endCopy();
+			if (beforeCommit != null) {
+				beforeCommit.execute(con);
+			}
+			con.commit();
+			log.debug("Copied "+ rows +" cases to "+ table);
+		} catch (SQLException e) {
+			rollback();
+			throw new IOException("Failed to copy cases to "+ table +": "+ e.getMessage(), e);
+		} finally {
+			release();
+		}
+	}
+
+	@Override
+	public void abort() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			rollback();
+			log.debug("Copy of "+ count +" cases to "+ table +" rolled back.");
+		} finally {
+			release();
+		}
+	}
+
+	private void rollback() {
+		try {
+			if (copyIn.isActive()) {
+				copyIn.cancelCopy();
+			}
+			con.rollback();
+		} catch (SQLException e) {
+			log.error("Failed to roll back the copy to "+ table +": "+ e.getMessage());
+		}
+	}
+
+	private void release() {
+		try {
+			PostgresDBConnection.closeConnection(con);
+		} catch (SQLException e) {
+			log.error("Error closing db connection: "+ e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,89 @@
+package cloud.aws.dao;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Closeable, forward only iterator over (time, price) rows streamed from a server-side cursor.
+ * The time column can be epoch milliseconds or a timestamp.
+ * Rows are fetched in blocks of the statement fetch size; closing before the end stops the transfer.
+ * <pre>
+ * try (PriceCursor c = dao.openPriceCursor(region, zone, instance, init, limit)) {
+ *     while (c.next()) {
+ *         c.getTime(); c.getPrice();
+ *     }
+ * }
+ * </pre>
+ */
+public class PriceCursor implements AutoCloseable {
+
+	private final PreparedStatement ps;
+	private final ResultSet rs;
+	private final boolean timestampColumn;
+	private boolean closed = false;
+
+	private long time;
+	private double price;
+	private long rowCount = 0;
+
+	PriceCursor(PreparedStatement ps) throws SQLException {
+		this.ps = ps;
+		try {
+			this.rs = ps.executeQuery();
+			this.timestampColumn = rs.getMetaData().getColumnType(1) == Types.TIMESTAMP;
+		} catch (SQLException e) {
+			ps.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Moves to the next row. The cursor is closed when there are no more rows.
+	 */
+	public boolean next() throws SQLException {
+		if (closed) {
+			return false;
+		}
+		if (!rs.next()) {
+			close();
+			return false;
+		}
+		time = timestampColumn ? rs.getTimestamp(1).getTime() : rs.getLong(1);
+		price = rs.getDouble(2);
+		rowCount++;
+		return true;
+	}
+
+	/**
+	 * @return time of the current row, in epoch milliseconds.
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	public double getPrice() {
+		return price;
+	}
+
+	/**
+	 * @return number of rows read so far.
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	@Override
+	public void close() throws SQLException {
+		if (!closed) {
+			closed = true;
+			try {
+				rs.close();
+			} finally {
+				ps.close();
+			}
+		}
+	}
+
+}
@@ -5,11 +5,15 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -24,12 +28,16 @@ import com.amazonaws.services.ec2.model.AvailabilityZone;
 import com.amazonaws.services.ec2.model.InstanceType;
 import com.amazonaws.services.ec2.model.SpotPrice;
 
+import cloud.aws.bean.CaseBuckets;
 import cloud.aws.bean.MySpotPrice;
+import cloud.aws.bean.PriceSeries;
 import cloud.aws.util.AWSUtil;
-import cloud.aws.util.TimerUtil;
 import core.db.PostgresDBConnection;
 import core.exceptions.TooManyConnectionsException;
 import core.executor.cbr.Case;
+import core.executor.cbr.CaseSink;
+import core.util.MinuteSort;
+import core.util.SurvivalCounts;
 
 public class SpotDAO {
 	
@@ -37,21 +45,44 @@ public class SpotDAO {
 	
 	public static final String TB_SPOTPRICE = "spotprice_all";
 	public static final String TB_CASES = "cases_all";
+	public static final String TB_CASES_SUMMARY = "cases_summary_all";
+	public static final String TB_CASES_WATERMARK = "cases_watermark_all";
+	// temporary table of the cases copied by a sink
+	private static final String TB_CASES_COPY = "cases_copy";
+	
+	private static final int DEFAULT_FETCH_SIZE = 10000;
+	
+	/**
+	 * Receives the rows of the streaming queries. Return false to stop reading.
+	 */
+	public interface PriceCallback {
+		boolean accept(long time, double price);
+	}
 
 	private Connection postgresConnection;
 	
+	private int fetchSize = DEFAULT_FETCH_SIZE;
+	
 	
 	public SpotDAO() {
 	}
 	
+	/**
+	 * Gives the connection held by this DAO back to the pool.
+	 */
 	public void closeConnection() {
 		try {
 			PostgresDBConnection.closeConnection(postgresConnection);
 		} catch (SQLException e) {
 			log.error("Error closing db connection: "+ e.getMessage());
+		} finally {
+			postgresConnection = null;
 		}
 	}
 	
+	/**
+	 * Returns the cases of a bucket in no particular order, the estimators sort them in linear time.
+	 */
 	public List<Case> findCases(String region, String zone, String instance, int dayOfWeek, int hourOfDay) throws SQLException {
 		
 //		log.debug("Searching "+ region +"/"+ zone +"/"+ instance +" in DOW: "+ dayOfWeek +" and HOD: "+ hourOfDay);
@@ -61,8 +92,7 @@ public class SpotDAO {
 		}
 		
 		String sql = new String("SELECT timeToRevocation, censored FROM "+ TB_CASES +" c "
-				+ " WHERE c.region = ? AND c.zone = ? AND c.instance = ? AND c.dayOfWeek = ? AND hourOfDay = ? "
-				+ " ORDER BY timeToRevocation");
+				+ " WHERE c.region = ? AND c.zone = ? AND c.instance = ? AND c.dayOfWeek = ? AND hourOfDay = ? ");
 		
 		PreparedStatement ps = getMyConnection().prepareStatement(sql.toString());
 		
@@ -85,6 +115,115 @@ public class SpotDAO {
 		return listToReturn;
 	}
 	
+	/**
+	 * Returns the cases of a bucket with their init and end times, ordered by init time, to be used by
+	 * {@link core.util.SlidingWindowSurvivalEstimator}.
+	 */
+	public List<Case> findCasesByInitTime(String region, String zone, String instance, int dayOfWeek, int hourOfDay) throws SQLException {
+		
+		if (StringUtils.isEmpty(region) || StringUtils.isEmpty(zone) || StringUtils.isEmpty(instance)) {
+			throw new IllegalArgumentException("Region/Zone/Instance are required.");
+		}
+		
+		String sql = new String("SELECT initTime, endTime, timeToRevocation, censored FROM "+ TB_CASES +" c "
+				+ " WHERE c.region = ? AND c.zone = ? AND c.instance = ? AND c.dayOfWeek = ? AND hourOfDay = ? "
+				+ " ORDER BY initTime");
+		
+		PreparedStatement ps = getMyConnection().prepareStatement(sql.toString());
+		ps.setFetchSize(fetchSize);
+		
+		ps.setString(1, region);
+		ps.setString(2, zone);
+		ps.setString(3, instance);
+		ps.setInt(4, dayOfWeek);
+		ps.setInt(5, hourOfDay);
+		
+		ResultSet rs = ps.executeQuery();
+		
+		List<Case> listToReturn = new ArrayList<>();
+		while (rs.next()) {
+			Case c = new Case(rs.getInt(3), rs.getBoolean(4));
+			c.setRegion(region);
+			c.setZone(zone);
+			c.setInstance(instance);
+			c.setDayOfWeek(dayOfWeek);
+			c.setHourOfDay(hourOfDay);
+			c.setInitTime(rs.getLong(1));
+			c.setEndTime(rs.getLong(2));
+			listToReturn.add(c);
+		}
+		rs.close();
+		ps.close();
+		getMyConnection().commit();
+		
+		return listToReturn;
+	}
+	
+	/**
+	 * Returns all cases of a series in one query, grouped by day of week and hour of day.
+	 * Rows are read without ORDER BY and each bucket is sorted by {@link MinuteSort} in linear time.
+	 */
+	public CaseBuckets findAllCases(String region, String zone, String instance) throws SQLException {
+		
+		if (StringUtils.isEmpty(region) || StringUtils.isEmpty(zone) || StringUtils.isEmpty(instance)) {
+			throw new IllegalArgumentException("Region/Zone/Instance are required.");
+		}
+		
+		String sql = new String("SELECT dayOfWeek, hourOfDay, timeToRevocation, censored FROM "+ TB_CASES +" c "
+				+ " WHERE c.region = ? AND c.zone = ? AND c.instance = ? ");
+		
+		PreparedStatement ps = getMyConnection().prepareStatement(sql.toString());
+		ps.setFetchSize(fetchSize);
+		
+		ps.setString(1, region);
+		ps.setString(2, zone);
+		ps.setString(3, instance);
+		
+		ResultSet rs = ps.executeQuery();
+		
+		int[][][] times = new int[CaseBuckets.DAYS][CaseBuckets.HOURS][];
+		boolean[][][] censored = new boolean[CaseBuckets.DAYS][CaseBuckets.HOURS][];
+		int[][] sizes = new int[CaseBuckets.DAYS][CaseBuckets.HOURS];
+		
+		while (rs.next()) {
+			
+			int d = rs.getInt(1);
+			int h = rs.getInt(2);
+			int size = sizes[d][h];
+			
+			if (times[d][h] == null) {
+				times[d][h] = new int[256];
+				censored[d][h] = new boolean[256];
+			} else if (size == times[d][h].length) {
+				times[d][h] = Arrays.copyOf(times[d][h], size * 2);
+				censored[d][h] = Arrays.copyOf(censored[d][h], size * 2);
+			}
+			times[d][h][size] = rs.getInt(3);
+			censored[d][h][size] = rs.getBoolean(4);
+			sizes[d][h]++;
+		}
+		rs.close();
+		ps.close();
+		getMyConnection().commit();
+		
+		CaseBuckets buckets = new CaseBuckets(region, zone, instance);
+		for (int d = 0; d < CaseBuckets.DAYS; d++) {
+			for (int h = 0; h < CaseBuckets.HOURS; h++) {
+				if (sizes[d][h] > 0) {
+					int[] bucketTimes = Arrays.copyOf(times[d][h], sizes[d][h]);
+					boolean[] bucketCensored = Arrays.copyOf(censored[d][h], sizes[d][h]);
+					MinuteSort.sort(bucketTimes, bucketCensored);
+					buckets.setBucket(d, h, bucketTimes, bucketCensored);
+				}
+			}
+		}
+		
+		return buckets;
+	}
+	
+	/**
+	 * Returns the cases of a bucket of all regions and zones in no particular order.
+	 */
 	public List<Case> findCases(String instance, int dayOfWeek, int hourOfDay) throws SQLException {
 		
 		if (StringUtils.isEmpty(instance)) {
@@ -92,8 +231,7 @@ public class SpotDAO {
 		}
 		
 		String sql = new String("SELECT timeToRevocation, censored FROM "+ TB_CASES +" c "
-				+ " WHERE c.instance = ? AND c.dayOfWeek = ? AND hourOfDay = ? "
-				+ " ORDER BY timeToRevocation");
+				+ " WHERE c.instance = ? AND c.dayOfWeek = ? AND hourOfDay = ? ");
 		
 		PreparedStatement ps = getMyConnection().prepareStatement(sql.toString());
 		
@@ -113,25 +251,94 @@ public class SpotDAO {
 		return listToReturn;
 	}
 	
-	private Connection getMyConnection() {
-		boolean connected = false;
-		while (!connected) {
-			try {
-				postgresConnection = PostgresDBConnection.getInstance().getConnectionFromPool();
-				connected = true;
-			} catch (TooManyConnectionsException e) {
-				log.debug(e.getMessage() +". Retrying...");
-				TimerUtil.sleep(1);
+	/**
+	 * Death and censored counts of each distinct time of a bucket, aggregated by the database.
+	 * Region and zone are optional, the cases of all of them are pooled when not provided.
+	 * Counts already loaded can be pooled with {@link SurvivalCounts#merge(SurvivalCounts)} instead.
+	 */
+	public SurvivalCounts findCaseCounts(String region, String zone, String instance, int dayOfWeek, int hourOfDay) throws SQLException {
+		return findCounts(TB_CASES, "SUM(CASE WHEN censored THEN 0 ELSE 1 END), SUM(CASE WHEN censored THEN 1 ELSE 0 END)", 
+				region, zone, instance, dayOfWeek, hourOfDay);
+	}
+	
+	/**
+	 * Same counts of {@link #findCaseCounts(String, String, String, int, int)}, read from the summary table
+	 * (one row per distinct time instead of one per case). The summary is rebuilt by
+	 * {@link PostgresDBConnection#refreshCasesSummary(String, String)} and kept up to date by {@link #saveSpotCasesBatch(List)}.
+	 */
+	public SurvivalCounts findCaseSummary(String region, String zone, String instance, int dayOfWeek, int hourOfDay) throws SQLException {
+		return findCounts(TB_CASES_SUMMARY, "SUM(deaths), SUM(censored)", region, zone, instance, dayOfWeek, hourOfDay);
+	}
+	
+	private SurvivalCounts findCounts(String table, String counts, String region, String zone, String instance, int dayOfWeek, int hourOfDay) throws SQLException {
+		
+		if (StringUtils.isEmpty(instance)) {
+			throw new IllegalArgumentException("Instance is required.");
+		}
+		
+		StringBuilder sql = new StringBuilder("SELECT timeToRevocation, ");
+		sql.append(counts);
+		sql.append(" FROM "+ table +" c ");
+		sql.append(" WHERE c.instance = ? AND c.dayOfWeek = ? AND c.hourOfDay = ? ");
+		
+		if (!StringUtils.isEmpty(region)) {
+			sql.append(" AND c.region = ? ");
+		}
+		if (!StringUtils.isEmpty(zone)) {
+			sql.append(" AND c.zone = ? ");
+		}
+		
+		sql.append(" GROUP BY timeToRevocation ORDER BY timeToRevocation");
+		
+		PreparedStatement ps = getMyConnection().prepareStatement(sql.toString());
+		
+		int paramCount = 0;
+		ps.setString(++paramCount, instance);
+		ps.setInt(++paramCount, dayOfWeek);
+		ps.setInt(++paramCount, hourOfDay);
+		if (!StringUtils.isEmpty(region)) {
+			ps.setString(++paramCount, region);
+		}
+		if (!StringUtils.isEmpty(zone)) {
+			ps.setString(++paramCount, zone);
+		}
+		
+		ResultSet rs = ps.executeQuery();
+		
+		int size = 0;
+		int[] times = new int[256];
+		int[] deaths = new int[256];
+		int[] censored = new int[256];
+		while (rs.next()) {
+			if (size == times.length) {
+				times = Arrays.copyOf(times, size * 2);
+				deaths = Arrays.copyOf(deaths, size * 2);
+				censored = Arrays.copyOf(censored, size * 2);
 			}
+			times[size] = rs.getInt(1);
+			deaths[size] = rs.getInt(2);
+			censored[size] = rs.getInt(3);
+			size++;
+		}
+		rs.close();
+		ps.close();
+		getMyConnection().commit();
+		
+		return SurvivalCounts.of(Arrays.copyOf(times, size), Arrays.copyOf(deaths, size), Arrays.copyOf(censored, size));
+	}
+	
+	/**
+	 * Returns the connection held by this DAO, borrowing one from the pool on first use.
+	 * Throws {@link TooManyConnectionsException} when the pool stays exhausted for its wait timeout.
+	 */
+	private Connection getMyConnection() throws SQLException {
+		if (postgresConnection == null) {
+			postgresConnection = PostgresDBConnection.getInstance().getConnectionFromPool();
 		}
 
 		return postgresConnection;
 	}
 
-	private void closeConnectionFromPool(Connection con) throws SQLException {
-		PostgresDBConnection.closeConnection(con);
-	}
-	
 	public List<MySpotPrice> findAll(String region, String zone, String instance) throws SQLException {
 		return findAll(region, zone, instance, null, null);
 	}
@@ -185,6 +392,132 @@ public class SpotDAO {
 		return listToReturn;
 	}
 	
+	public PriceSeries findPriceSeries(String region, String zone, String instance) throws SQLException {
+		return findPriceSeries(region, zone, instance, null, null);
+	}
+	
+	/**
+	 * Same records as {@link #findAll(String, String, String, Date, Date)}, read from the time and price columns
+	 * straight into primitive arrays.
+	 */
+	public PriceSeries findPriceSeries(String region, String zone, String instance, Date initDate, Date limitDate) throws SQLException {
+		return toPriceSeries(region, zone, instance, openPriceCursor(region, zone, instance, initDate, limitDate));
+	}
+	
+	/**
+	 * Records of a series from the time (inclusive) to the last one.
+	 */
+	public PriceSeries findPriceSeries(String region, String zone, String instance, long initTime) throws SQLException {
+		return toPriceSeries(region, zone, instance, openPriceCursor(region, zone, instance, initTime, null));
+	}
+	
+	private PriceSeries toPriceSeries(String region, String zone, String instance, PriceCursor priceCursor) throws SQLException {
+		
+		long[] times = new long[1024];
+		double[] prices = new double[1024];
+		int size = 0;
+		
+		try (PriceCursor cursor = priceCursor) {
+			while (cursor.next()) {
+				if (size == times.length) {
+					times = Arrays.copyOf(times, size * 2);
+					prices = Arrays.copyOf(prices, size * 2);
+				}
+				times[size] = cursor.getTime();
+				prices[size] = cursor.getPrice();
+				size++;
+			}
+		}
+		
+		return new PriceSeries(region, zone, instance, Arrays.copyOf(times, size), Arrays.copyOf(prices, size));
+	}
+	
+	/**
+	 * Streams the (time, price) records of a series, ordered by time, from a server-side cursor 
+	 * fetching {@link #getFetchSize()} rows at a time. Dates are optional, but both are required when one is given.
+	 * The cursor must be closed, what can be done before reading all rows.
+	 */
+	public PriceCursor openPriceCursor(String region, String zone, String instance, Date initDate, Date limitDate) throws SQLException {
+		
+		if ((initDate != null && limitDate == null) || (initDate == null && limitDate != null)) {
+			throw new IllegalArgumentException("Both initDate and limitDate are required when one of them was passed as parameter.");
+		}
+		
+		return openPriceCursor(region, zone, instance, initDate != null ? initDate.getTime() : null, limitDate != null ? limitDate.getTime() : null);
+	}
+	
+	private PriceCursor openPriceCursor(String region, String zone, String instance, Long initTime, Long limitTime) throws SQLException {
+		
+		if (region == null || zone == null || instance == null) {
+			throw new IllegalArgumentException("Region, zone and instance are required.");
+		}
+		
+		StringBuilder sql = new StringBuilder("SELECT time, price FROM "+ TB_SPOTPRICE +" s ");
+		sql.append(" WHERE s.region = ? AND s.zone = ? AND instance = ? ");
+		
+		if (initTime != null) {
+			sql.append(" AND s.time >= ?");
+		}
+		if (limitTime != null) {
+			sql.append(" AND s.time <= ?");
+		}
+		
+		sql.append(" ORDER BY time");
+		
+		PreparedStatement ps = getMyConnection().prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		ps.setFetchSize(fetchSize);
+		
+		int paramCount = 0;
+		ps.setString(++paramCount, region);
+		ps.setString(++paramCount, zone);
+		ps.setString(++paramCount, instance);
+		
+		if (initTime != null) {
+			ps.setLong(++paramCount, initTime);
+		}
+		if (limitTime != null) {
+			ps.setLong(++paramCount, limitTime);
+		}
+		
+		return new PriceCursor(ps);
+	}
+	
+	/**
+	 * Streams the records of {@link #openPriceCursor(String, String, String, Date, Date)} to a callback, 
+	 * stopping when the callback returns false.
+	 * 
+	 * @return number of records read.
+	 */
+	public long streamPrices(String region, String zone, String instance, Date initDate, Date limitDate, PriceCallback callback) throws SQLException {
+		try (PriceCursor cursor = openPriceCursor(region, zone, instance, initDate, limitDate)) {
+			return stream(cursor, callback);
+		}
+	}
+	
+	/**
+	 * Returns the time of the first record after (or at) initDate with price greater than the bid, 
+	 * or null when the price never exceeded it. Only rows up to that record are transferred.
+	 */
+	public Long findFirstPriceAbove(String region, String zone, String instance, Date initDate, double bid) throws SQLException {
+		try (PriceCursor cursor = openPriceCursor(region, zone, instance, initDate.getTime(), null)) {
+			while (cursor.next()) {
+				if (cursor.getPrice() > bid) {
+					return cursor.getTime();
+				}
+			}
+		}
+		return null;
+	}
+	
+	private long stream(PriceCursor cursor, PriceCallback callback) throws SQLException {
+		while (cursor.next()) {
+			if (!callback.accept(cursor.getTime(), cursor.getPrice())) {
+				break;
+			}
+		}
+		return cursor.getRowCount();
+	}
+	
 	public Long getLastRecord(Regions region, AvailabilityZone zone, InstanceType instance) throws SQLException {
 		Long returnValue = null;
 		PreparedStatement ps = getMyConnection().prepareStatement("SELECT MAX(s.time) FROM "+ TB_SPOTPRICE +" s "+ 
@@ -205,11 +538,26 @@ public class SpotDAO {
 	}
 	
 	public void saveSpotCasesBatch(List<Case> caseList) throws SQLException {
+		
+		log.debug("Saving "+ caseList.size() +" Cases of "+ AWSUtil.fullInstanceName(caseList.get(0).getRegion(), caseList.get(0).getZone(), caseList.get(0).getInstance()));
+		
+		long l1 = System.currentTimeMillis();
+		
+		Connection con = getMyConnection();
+		insertCases(con, caseList);
+		addToCasesSummary(con, caseList);
+		con.commit();
+		closeConnection();
+		
+		long l2 = System.currentTimeMillis();
+		log.debug("Saved "+ caseList.size() +" Cases of "+ AWSUtil.fullInstanceName(caseList.get(0).getRegion(), caseList.get(0).getZone(), caseList.get(0).getInstance()) +" in "+ ((l2 - l1)/1000) +" seconds.");
+	}
+	
+	private void insertCases(Connection con, List<Case> caseList) throws SQLException {
 		String sql = "INSERT INTO "+ TB_CASES +" "
 				+ " (region, zone, instance, dayOfWeek, hourOfDay, censored, initTime, endTime, timeToRevocation, skipRecords, initValue, endValue, additionAllowed) "
 				+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 		
-		Connection con = getMyConnection();
 		PreparedStatement ps = con.prepareStatement(sql);
 		
 		for (Case c : caseList) {
@@ -229,18 +577,243 @@ public class SpotDAO {
 			
 			ps.addBatch();
 		}
+		ps.executeBatch();
+		ps.close();
+	}
+	
+	/**
+	 * @return time of the last price record turned into cases of the series, or null when it was never recorded.
+	 */
+	public Long findCasesWatermark(String region, String zone, String instance) throws SQLException {
 		
-		log.debug("Saving "+ caseList.size() +" Cases of "+ AWSUtil.fullInstanceName(caseList.get(0).getRegion(), caseList.get(0).getZone(), caseList.get(0).getInstance()));
+		PreparedStatement ps = getMyConnection().prepareStatement("SELECT lastTime FROM "+ TB_CASES_WATERMARK 
+				+ " WHERE region = ? AND zone = ? AND instance = ?");
+		ps.setString(1, region);
+		ps.setString(2, zone);
+		ps.setString(3, instance);
 		
-		long l1 = System.currentTimeMillis();
+		Long returnValue = null;
+		ResultSet rs = ps.executeQuery();
+		if (rs.next()) {
+			returnValue = rs.getLong(1);
+		}
+		rs.close();
+		ps.close();
+		getMyConnection().commit();
 		
-		ps.executeBatch();
-		con.commit();
+		return returnValue;
+	}
+	
+	/**
+	 * Returns the censored cases of a series with the addiction, the base times still waiting for a revocation.
+	 * The init value is the price of the base record times the addiction, as the generator computed it, since the 
+	 * saved one is rounded. Prices are not unique by time, so each case takes the one price of its base time closest 
+	 * to the saved init value, and the saved value when the record is gone.
+	 */
+	public List<Case> findOpenCases(String region, String zone, String instance, double addiction) throws SQLException {
+		
+		String sql = "SELECT c.dayOfWeek, c.hourOfDay, c.initTime, c.endTime, c.timeToRevocation, c.skipRecords, c.endValue, c.initValue, "
+				+ " (SELECT s.price FROM "+ TB_SPOTPRICE +" s "
+				+ "   WHERE s.region = c.region AND s.zone = c.zone AND s.instance = c.instance AND s.time = c.initTime "
+				+ "   ORDER BY ABS(s.price * ? - c.initValue) LIMIT 1) "
+				+ " FROM "+ TB_CASES +" c "
+				+ " WHERE c.region = ? AND c.zone = ? AND c.instance = ? AND c.censored AND c.additionAllowed = ? ";
+		
+		PreparedStatement ps = getMyConnection().prepareStatement(sql);
+		ps.setFetchSize(fetchSize);
+		ps.setDouble(1, addiction);
+		ps.setString(2, region);
+		ps.setString(3, zone);
+		ps.setString(4, instance);
+		ps.setDouble(5, addiction);
+		
+		List<Case> listToReturn = new ArrayList<>();
+		ResultSet rs = ps.executeQuery();
+		while (rs.next()) {
+			Case c = new Case(region, zone, instance);
+			c.setDayOfWeek(rs.getInt(1));
+			c.setHourOfDay(rs.getInt(2));
+			c.setInitTime(rs.getLong(3));
+			c.setEndTime(rs.getLong(4));
+			c.setTimeToRevocation(rs.getInt(5));
+			c.setSkipRecords(rs.getInt(6));
+			c.setEndValue(rs.getDouble(7));
+			double price = rs.getDouble(9);
+			c.setInitValue(rs.wasNull() ? rs.getDouble(8) : price * addiction);
+			c.setAdditionAllowed(addiction);
+			c.setCensored(true);
+			listToReturn.add(c);
+		}
+		rs.close();
 		ps.close();
-		closeConnectionFromPool(con);
+		getMyConnection().commit();
 		
-		long l2 = System.currentTimeMillis();
-		log.debug("Saved "+ caseList.size() +" Cases of "+ AWSUtil.fullInstanceName(caseList.get(0).getRegion(), caseList.get(0).getZone(), caseList.get(0).getInstance()) +" in "+ ((l2 - l1)/1000) +" seconds.");
+		return listToReturn;
+	}
+	
+	/**
+	 * Sink saving cases of a series with COPY, added to the saved ones or replacing all of them (and their summary).
+	 * The summary and the watermark of the series are moved on close, in the transaction of the copy.
+	 */
+	public CaseSink openCasesSink(String region, String zone, String instance, boolean replace, long watermark) throws SQLException {
+		return openCasesSink(region, zone, instance, con -> {
+			if (replace) {
+				for (String table : new String[] {TB_CASES, TB_CASES_SUMMARY}) {
+					PreparedStatement ps = con.prepareStatement("DELETE FROM "+ table +" WHERE region = ? AND zone = ? AND instance = ?");
+					ps.setString(1, region);
+					ps.setString(2, zone);
+					ps.setString(3, instance);
+					ps.executeUpdate();
+					ps.close();
+				}
+			}
+		}, watermark);
+	}
+	
+	/**
+	 * Sink saving the cases generated after the watermark of a series. The open cases of the addictions, as read by 
+	 * {@link #findOpenCases(String, String, String, double)}, are deleted and taken out of the summary first; the 
+	 * cases written replace them.
+	 */
+	public CaseSink openCasesDeltaSink(String region, String zone, String instance, double[] addictions, long watermark) throws SQLException {
+		return openCasesSink(region, zone, instance, con -> {
+			for (double addiction : addictions) {
+				removeOpenCases(con, region, zone, instance, addiction);
+			}
+			PreparedStatement ps = con.prepareStatement("DELETE FROM "+ TB_CASES_SUMMARY +" WHERE region = ? AND zone = ? AND instance = ? AND deaths = 0 AND censored = 0");
+			ps.setString(1, region);
+			ps.setString(2, zone);
+			ps.setString(3, instance);
+			ps.executeUpdate();
+			ps.close();
+		}, watermark);
+	}
+	
+	/**
+	 * Cases are copied into a temporary table, dropped on commit, so on close their counts are added to the summary 
+	 * table by the database and they are moved to the cases table, without holding them in memory. 
+	 * The connection of the DAO is given back first, so a caller never holds two connections of the pool.
+	 */
+	private CaseSink openCasesSink(String region, String zone, String instance, CopyCaseSink.Statements beforeCopy, long watermark) throws SQLException {
+		closeConnection();
+		return new CopyCaseSink(TB_CASES_COPY, con -> {
+			beforeCopy.execute(con);
+			Statement stmt = con.createStatement();
+			stmt.executeUpdate("CREATE TEMPORARY TABLE "+ TB_CASES_COPY +" (LIKE "+ TB_CASES +") ON COMMIT DROP");
+			stmt.close();
+		}, con -> {
+			Statement stmt = con.createStatement();
+			stmt.executeUpdate("INSERT INTO "+ TB_CASES_SUMMARY +" AS s "
+					+ " (region, zone, instance, dayOfWeek, hourOfDay, timeToRevocation, deaths, censored) "
+					+ " SELECT region, zone, instance, dayOfWeek, hourOfDay, timeToRevocation, "
+					+ " SUM(CASE WHEN censored THEN 0 ELSE 1 END), SUM(CASE WHEN censored THEN 1 ELSE 0 END) "
+					+ " FROM "+ TB_CASES_COPY 
+					+ " GROUP BY region, zone, instance, dayOfWeek, hourOfDay, timeToRevocation "
+					+ " ON CONFLICT (region, zone, instance, dayOfWeek, hourOfDay, timeToRevocation) "
+					+ " DO UPDATE SET deaths = s.deaths + EXCLUDED.deaths, censored = s.censored + EXCLUDED.censored");
+			stmt.executeUpdate("INSERT INTO "+ TB_CASES +" SELECT * FROM "+ TB_CASES_COPY);
+			stmt.close();
+			saveCasesWatermark(con, region, zone, instance, watermark);
+		});
+	}
+	
+	/**
+	 * Deletes the censored cases of a series with the addiction, taking their counts out of the summary table.
+	 */
+	private void removeOpenCases(Connection con, String region, String zone, String instance, double addiction) throws SQLException {
+		
+		PreparedStatement ps = con.prepareStatement("UPDATE "+ TB_CASES_SUMMARY +" s SET censored = s.censored - d.removed "
+				+ " FROM (SELECT dayOfWeek, hourOfDay, timeToRevocation, COUNT(*) AS removed FROM "+ TB_CASES 
+				+ "   WHERE region = ? AND zone = ? AND instance = ? AND censored AND additionAllowed = ? "
+				+ "   GROUP BY dayOfWeek, hourOfDay, timeToRevocation) d "
+				+ " WHERE s.region = ? AND s.zone = ? AND s.instance = ? "
+				+ " AND s.dayOfWeek = d.dayOfWeek AND s.hourOfDay = d.hourOfDay AND s.timeToRevocation = d.timeToRevocation");
+		ps.setString(1, region);
+		ps.setString(2, zone);
+		ps.setString(3, instance);
+		ps.setDouble(4, addiction);
+		ps.setString(5, region);
+		ps.setString(6, zone);
+		ps.setString(7, instance);
+		ps.executeUpdate();
+		ps.close();
+		
+		ps = con.prepareStatement("DELETE FROM "+ TB_CASES +" WHERE region = ? AND zone = ? AND instance = ? AND censored AND additionAllowed = ?");
+		ps.setString(1, region);
+		ps.setString(2, zone);
+		ps.setString(3, instance);
+		ps.setDouble(4, addiction);
+		int rows = ps.executeUpdate();
+		ps.close();
+		
+		log.debug("Removed "+ rows +" open cases of "+ AWSUtil.fullInstanceName(region, zone, instance) +" with addiction "+ addiction);
+	}
+	
+	private void saveCasesWatermark(Connection con, String region, String zone, String instance, long watermark) throws SQLException {
+		PreparedStatement ps = con.prepareStatement("INSERT INTO "+ TB_CASES_WATERMARK +" (region, zone, instance, lastTime) VALUES (?, ?, ?, ?) "
+				+ " ON CONFLICT (region, zone, instance) DO UPDATE SET lastTime = EXCLUDED.lastTime");
+		ps.setString(1, region);
+		ps.setString(2, zone);
+		ps.setString(3, instance);
+		ps.setLong(4, watermark);
+		ps.executeUpdate();
+		ps.close();
+	}
+	
+	/**
+	 * Adds the counts of the cases to the summary table, in the transaction that saves them.
+	 */
+	private void addToCasesSummary(Connection con, List<Case> caseList) throws SQLException {
+		SummaryCounts counts = new SummaryCounts();
+		for (Case c : caseList) {
+			counts.add(c);
+		}
+		addToCasesSummary(con, counts);
+	}
+	
+	private static void addToCasesSummary(Connection con, SummaryCounts counts) throws SQLException {
+		
+		PreparedStatement ps = con.prepareStatement("INSERT INTO "+ TB_CASES_SUMMARY +" AS s "
+				+ " (region, zone, instance, dayOfWeek, hourOfDay, timeToRevocation, deaths, censored) "
+				+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?) "
+				+ " ON CONFLICT (region, zone, instance, dayOfWeek, hourOfDay, timeToRevocation) "
+				+ " DO UPDATE SET deaths = s.deaths + EXCLUDED.deaths, censored = s.censored + EXCLUDED.censored");
+		
+		for (Map.Entry<String, int[]> e : counts.counts.entrySet()) {
+			Case c = counts.keys.get(e.getKey());
+			ps.setString(1, c.getRegion());
+			ps.setString(2, c.getZone());
+			ps.setString(3, c.getInstance());
+			ps.setInt(4, c.getDayOfWeek());
+			ps.setInt(5, c.getHourOfDay());
+			ps.setInt(6, c.getTimeToRevocation());
+			ps.setInt(7, e.getValue()[0]);
+			ps.setInt(8, e.getValue()[1]);
+			ps.addBatch();
+		}
+		ps.executeBatch();
+		ps.close();
+	}
+	
+	/**
+	 * Death and censored counts of each (region, zone, instance, dayOfWeek, hourOfDay, timeToRevocation) of cases,
+	 * to be added to the summary table.
+	 */
+	private static class SummaryCounts {
+		
+		private final Map<String, int[]> counts = new LinkedHashMap<>();
+		private final Map<String, Case> keys = new HashMap<>();
+		
+		void add(Case c) {
+			String key = c.getRegion() +";"+ c.getZone() +";"+ c.getInstance() +";"+ c.getDayOfWeek() +";"+ c.getHourOfDay() +";"+ c.getTimeToRevocation();
+			int[] count = counts.get(key);
+			if (count == null) {
+				count = new int[2];
+				counts.put(key, count);
+				keys.put(key, c);
+			}
+			count[c.isCensored() ? 1 : 0]++;
+		}
 	}
 	
 	public void saveSpotPriceBatch(List<SpotPrice> sps, Regions reg) throws SQLException {
@@ -311,7 +884,7 @@ public class SpotDAO {
 		}
 		
 		con.commit();
-		closeConnectionFromPool(con);
+		closeConnection();
 		
 		log.debug("Saved "+ (reverseList.size() - failureCount) + " in "+ AWSUtil.fullInstanceName(reg, reverseList.get(0).getAvailabilityZone(), reverseList.get(0).getInstanceType()) +". Duplicates: "+ failureCount);
 		
@@ -321,6 +894,27 @@ public class SpotDAO {
 		
 		Map<Long, Double> mapPriceChanges = new TreeMap<>();
 		
+		try {
+			streamPriceChangeHistory(region, zone, instance, dateInit, dateEnd, (time, price) -> {
+				mapPriceChanges.put(time, price);
+				return true;
+			});
+		} catch (SQLException e) {
+			Log.error("Error on query: "+ e.getMessage() );
+		}
+		
+		return mapPriceChanges;
+		
+	}
+	
+	/**
+	 * Streams the records of {@link #findPriceChangeHistory(String, String, String, Date, Date)} to a callback 
+	 * from a server-side cursor, stopping when the callback returns false.
+	 * 
+	 * @return number of records read.
+	 */
+	public long streamPriceChangeHistory(String region, String zone, String instance, Date dateInit, Date dateEnd, PriceCallback callback) throws SQLException {
+		
 		int paramValidateCount = 0;
 		paramValidateCount += dateInit != null ? 1 : 0;
 		paramValidateCount += dateEnd != null ? 1 : 0;
@@ -352,51 +946,55 @@ public class SpotDAO {
 		
 		sql.append(" ORDER BY timestamp ");
 		
-		try (PreparedStatement ps = getMyConnection().prepareStatement(sql.toString())) {
-			
-			int paramCount = 0;
-			
-			if (region != null && !region.isEmpty()) {
-				ps.setString(++paramCount, region);
-			}
-			
-			if (zone != null && !zone.isEmpty()) {
-				ps.setString(++paramCount, zone);
-			}
-			
-			if (instance != null && !instance.isEmpty()) {
-				ps.setString(++paramCount, instance);
-			}
-			
-			if (dateInit != null || dateEnd != null) {
-				Calendar cInit = Calendar.getInstance();
-				cInit.setTime(dateInit);
-				cInit.set(Calendar.HOUR_OF_DAY, 0);
-				
-				Calendar cEnd = Calendar.getInstance();
-				cEnd.setTime(dateEnd);
-				cEnd.set(Calendar.HOUR_OF_DAY, 0);
-				
-				ps.setDate(++paramCount, new java.sql.Date(cInit.getTimeInMillis()));
-				ps.setDate(++paramCount, new java.sql.Date(cEnd.getTimeInMillis()));
-			}
-			
-			try ( ResultSet rs = ps.executeQuery() ) {
-				
-				while(rs.next()) {
-					mapPriceChanges.put(rs.getTimestamp(1).getTime(), rs.getDouble(2));
-				}
-				
-			}
+		PreparedStatement ps = getMyConnection().prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		ps.setFetchSize(fetchSize);
+		
+		int paramCount = 0;
+		
+		if (region != null && !region.isEmpty()) {
+			ps.setString(++paramCount, region);
+		}
+		
+		if (zone != null && !zone.isEmpty()) {
+			ps.setString(++paramCount, zone);
+		}
+		
+		if (instance != null && !instance.isEmpty()) {
+			ps.setString(++paramCount, instance);
+		}
+		
+		if (dateInit != null || dateEnd != null) {
+			Calendar cInit = Calendar.getInstance();
+			cInit.setTime(dateInit);
+			cInit.set(Calendar.HOUR_OF_DAY, 0);
 			
+			Calendar cEnd = Calendar.getInstance();
+			cEnd.setTime(dateEnd);
+			cEnd.set(Calendar.HOUR_OF_DAY, 0);
 			
-		} catch (SQLException e) {
-			Log.error("Error on query: "+ e.getMessage() );
+			ps.setDate(++paramCount, new java.sql.Date(cInit.getTimeInMillis()));
+			ps.setDate(++paramCount, new java.sql.Date(cEnd.getTimeInMillis()));
 		}
 		
-		return mapPriceChanges;
+		try (PriceCursor cursor = new PriceCursor(ps)) {
+			return stream(cursor, callback);
+		}
 		
-	}	
+	}
+	
+	/**
+	 * Rows fetched at a time by the streaming queries.
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+	
+	public void setFetchSize(int fetchSize) {
+		if (fetchSize < 1) {
+			throw new IllegalArgumentException("Fetch size must be positive.");
+		}
+		this.fetchSize = fetchSize;
+	}
 
 	
 }
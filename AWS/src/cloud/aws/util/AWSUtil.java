@@ -54,6 +54,14 @@ public final class AWSUtil {
 		startedTime = Calendar.getInstance();
 	}
 	
+	/**
+	 * @return family of an instance type, as "m3" of "m3.large".
+	 */
+	public static String instanceFamily(String instance) {
+		int dot = instance.indexOf('.');
+		return dot < 0 ? instance : instance.substring(0, dot);
+	}
+	
 	public static String fullInstanceName(String reg, String zone, String instance) {
 		return reg +"/"+ zone +"/"+ instance;
 	}
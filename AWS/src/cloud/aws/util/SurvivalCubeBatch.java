@@ -0,0 +1,181 @@
+package cloud.aws.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import cloud.aws.bean.CaseBuckets;
+import cloud.aws.bean.SeriesKey;
+import cloud.aws.bean.SurvivalCube;
+import cloud.aws.dao.SpotDAO;
+
+/**
+ * Computes the {@link SurvivalCube} of many series at once.
+ * <p>
+ * Cases are loaded by a few loader threads, one query per series, and each series is handed to a fork/join pool
+ * as soon as it is loaded, so loading and computing overlap. Each series is one task: nesting a parallel stream over
+ * the buckets in these tasks made the workers help each other's joins and was several times slower.
+ * Loaders wait while too many loaded series are waiting to be computed, so memory stays bounded.
+ * Series that fail to load are logged and left out of the result.
+ */
+public class SurvivalCubeBatch {
+
+	private static final Logger log = LogManager.getLogger(SurvivalCubeBatch.class);
+
+	public static final int DEFAULT_LOADER_THREADS = 4;
+
+	/**
+	 * Cubes and throughput of a batch.
+	 */
+	public static class Result {
+
+		private final Map<SeriesKey, SurvivalCube> cubes;
+		private final int curveCount;
+		private final long elapsedMillis;
+
+		Result(Map<SeriesKey, SurvivalCube> cubes, long elapsedMillis) {
+			this.cubes = Collections.unmodifiableMap(cubes);
+			this.elapsedMillis = elapsedMillis;
+			int count = 0;
+			for (SurvivalCube cube : cubes.values()) {
+				count += cube.getCurveCount();
+			}
+			this.curveCount = count;
+		}
+
+		/**
+		 * @return cubes in the order of the keys.
+		 */
+		public Map<SeriesKey, SurvivalCube> getCubes() {
+			return cubes;
+		}
+
+		public SurvivalCube getCube(SeriesKey key) {
+			return cubes.get(key);
+		}
+
+		public int getCurveCount() {
+			return curveCount;
+		}
+
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		public double getCurvesPerSecond() {
+			return elapsedMillis > 0 ? curveCount * 1000.0 / elapsedMillis : curveCount;
+		}
+
+		@Override
+		public String toString() {
+			return cubes.size() +" series, "+ curveCount +" curves in "+ elapsedMillis +" ms ("+ String.format("%.1f", getCurvesPerSecond()) +" curves/s).";
+		}
+	}
+
+	private final ForkJoinPool pool;
+	private int loaderThreads = DEFAULT_LOADER_THREADS;
+
+	public SurvivalCubeBatch() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	public SurvivalCubeBatch(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Number of threads loading cases from the database at the same time.
+	 */
+	public void setLoaderThreads(int loaderThreads) {
+		if (loaderThreads < 1) {
+			throw new IllegalArgumentException("Loader threads must be positive.");
+		}
+		this.loaderThreads = loaderThreads;
+	}
+
+	/**
+	 * Loads the cases of the series from the database and computes their cubes.
+	 */
+	public Result compute(Collection<SeriesKey> keys) {
+		ExecutorService loaders = Executors.newFixedThreadPool(loaderThreads);
+		try {
+			return compute(keys, key -> {
+				SpotDAO dao = new SpotDAO();
+				try {
+					return dao.findAllCases(key.getRegion(), key.getZone(), key.getInstance());
+				} finally {
+					dao.closeConnection();
+				}
+			}, loaders);
+		} finally {
+			loaders.shutdown();
+		}
+	}
+
+	/**
+	 * Source of the cases of a series.
+	 */
+	public interface CaseLoader {
+		CaseBuckets load(SeriesKey key) throws Exception;
+	}
+
+	/**
+	 * Loads the cases of each series with the loader, on the given executor, and computes their cubes.
+	 */
+	public Result compute(Collection<SeriesKey> keys, CaseLoader loader, ExecutorService loaders) {
+
+		long start = System.currentTimeMillis();
+
+		List<SeriesKey> orderedKeys = new ArrayList<>(keys);
+		// series loaded and not computed yet
+		Semaphore pending = new Semaphore(pool.getParallelism() + loaderThreads);
+		List<CompletableFuture<SurvivalCube>> futures = new ArrayList<>(orderedKeys.size());
+		for (SeriesKey key : orderedKeys) {
+			futures.add(CompletableFuture
+					.supplyAsync(() -> {
+						pending.acquireUninterruptibly();
+						return load(loader, key);
+					}, loaders)
+					.thenApplyAsync(cases -> {
+						try {
+							return cases != null ? new SurvivalCube(cases) : null;
+						} finally {
+							pending.release();
+						}
+					}, pool));
+		}
+
+		Map<SeriesKey, SurvivalCube> cubes = new LinkedHashMap<>();
+		for (int i = 0; i < orderedKeys.size(); i++) {
+			SurvivalCube cube = futures.get(i).join();
+			if (cube != null) {
+				cubes.put(orderedKeys.get(i), cube);
+			}
+		}
+
+		Result result = new Result(cubes, System.currentTimeMillis() - start);
+		log.info("Survival batch: "+ result);
+		return result;
+	}
+
+	private static CaseBuckets load(CaseLoader loader, SeriesKey key) {
+		try {
+			return loader.load(key);
+		} catch (Exception e) {
+			log.error("Error when loading cases of "+ key +": "+ e.getMessage());
+			return null;
+		}
+	}
+
+}
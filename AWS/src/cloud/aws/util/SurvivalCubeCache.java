@@ -0,0 +1,218 @@
+package cloud.aws.util;
+
+import java.lang.ref.WeakReference;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import cloud.aws.bean.CaseBuckets;
+import cloud.aws.bean.SurvivalCube;
+import cloud.aws.dao.SpotDAO;
+
+/**
+ * Process-wide cache of {@link SurvivalCube}, one per series loaded from the database and one per set of cases given
+ * by the caller: cubes of given cases are found only with the same {@link CaseBuckets} instance, so cases of another
+ * date range or window of the series never get the cube of other cases.
+ * <p>
+ * Threads asking for the same series wait for a single computation. When the estimated memory of the cubes goes
+ * over the limit, the least recently used cubes are evicted.
+ */
+public class SurvivalCubeCache {
+
+	private static final Logger log = LogManager.getLogger(SurvivalCubeCache.class);
+
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+	// separates the series from the identity of the given cases in the keys
+	private static final String CASES_KEY = "#";
+
+	private static SurvivalCubeCache instance = null;
+
+	private static class Entry {
+		volatile SurvivalCube cube;
+		volatile long lastAccess;
+		// cases given by the caller, not kept alive by the cache
+		WeakReference<CaseBuckets> source;
+	}
+
+	private final Map<String, Entry> cubes = new ConcurrentHashMap<>();
+	private final AtomicLong accessCount = new AtomicLong();
+	private final AtomicLong totalBytes = new AtomicLong();
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	private volatile long maxBytes = DEFAULT_MAX_BYTES;
+
+	public static synchronized SurvivalCubeCache getInstance() {
+		if (instance == null) {
+			instance = new SurvivalCubeCache();
+		}
+		return instance;
+	}
+
+	private SurvivalCubeCache() {
+	}
+
+	/**
+	 * Returns the cube of the series, loading its cases from the database when it is not cached.
+	 */
+	public SurvivalCube get(String region, String zone, String instance) throws SQLException {
+		String key = AWSUtil.fullInstanceName(region, zone, instance);
+		Entry entry = cubes.computeIfAbsent(key, k -> new Entry());
+		if (entry.cube == null) {
+			synchronized (entry) {
+				if (entry.cube == null) {
+					// on failure the entry stays empty and the next caller tries again
+					SpotDAO dao = new SpotDAO();
+					try {
+						store(key, entry, dao.findAllCases(region, zone, instance));
+					} finally {
+						dao.closeConnection();
+					}
+					return touch(entry);
+				}
+			}
+		}
+		hitCount.incrementAndGet();
+		return touch(entry);
+	}
+
+	/**
+	 * Returns the cube of the cases, computing it from them when it is not cached. Only a call with the same instance
+	 * of cases gets the cached cube, never the one of the series from the database or of other cases.
+	 */
+	public SurvivalCube get(CaseBuckets cases) {
+		String key = AWSUtil.fullInstanceName(cases.getRegion(), cases.getZone(), cases.getInstance()) + CASES_KEY + System.identityHashCode(cases);
+		Entry entry = cubes.computeIfAbsent(key, k -> {
+			Entry e = new Entry();
+			e.source = new WeakReference<>(cases);
+			return e;
+		});
+		if (entry.source.get() != cases) {
+			// other cases with the same identity hash, collected or not
+			remove(key, entry);
+			return get(cases);
+		}
+		if (entry.cube == null) {
+			synchronized (entry) {
+				if (entry.cube == null) {
+					store(key, entry, cases);
+					return touch(entry);
+				}
+			}
+		}
+		hitCount.incrementAndGet();
+		return touch(entry);
+	}
+
+	/**
+	 * Minutes until failure of a bucket at a confidence level.
+	 * @see SurvivalCube#getMinutes(int, int, double)
+	 */
+	public Integer getMinutes(String region, String zone, String instance, int dayOfWeek, int hourOfDay, double confidence) throws SQLException {
+		return get(region, zone, instance).getMinutes(dayOfWeek, hourOfDay, confidence);
+	}
+
+	private void store(String key, Entry entry, CaseBuckets cases) {
+		long start = System.currentTimeMillis();
+		SurvivalCube cube = new SurvivalCube(cases);
+		missCount.incrementAndGet();
+		synchronized (this) {
+			entry.cube = cube;
+			// the entry may have been invalidated while computing, then it is only returned to this caller
+			if (cubes.get(key) == entry) {
+				totalBytes.addAndGet(cube.getEstimatedBytes());
+				evictIfNeeded(entry);
+			}
+		}
+		log.debug("Survival cube of "+ key +" computed in "+ (System.currentTimeMillis() - start) +" ms. "+ getStatistics());
+	}
+
+	private SurvivalCube touch(Entry entry) {
+		entry.lastAccess = accessCount.incrementAndGet();
+		return entry.cube;
+	}
+
+	// called holding the lock of the cache, as every change of the memory accounting
+	private void evictIfNeeded(Entry keep) {
+		while (totalBytes.get() > maxBytes) {
+			String eldestKey = null;
+			Entry eldest = null;
+			for (Map.Entry<String, Entry> e : cubes.entrySet()) {
+				Entry candidate = e.getValue();
+				if (candidate != keep && candidate.cube != null && (eldest == null || candidate.lastAccess < eldest.lastAccess)) {
+					eldestKey = e.getKey();
+					eldest = candidate;
+				}
+			}
+			if (eldest == null) {
+				return;
+			}
+			if (cubes.remove(eldestKey, eldest)) {
+				totalBytes.addAndGet(-eldest.cube.getEstimatedBytes());
+				evictionCount.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Removes the cubes of a series, the one of the database and the ones of given cases, after its cases changed.
+	 */
+	public synchronized void invalidate(String region, String zone, String instance) {
+		String key = AWSUtil.fullInstanceName(region, zone, instance);
+		for (Map.Entry<String, Entry> e : cubes.entrySet()) {
+			if (e.getKey().equals(key) || e.getKey().startsWith(key + CASES_KEY)) {
+				remove(e.getKey(), e.getValue());
+			}
+		}
+	}
+
+	private synchronized void remove(String key, Entry entry) {
+		if (cubes.remove(key, entry) && entry.cube != null) {
+			totalBytes.addAndGet(-entry.cube.getEstimatedBytes());
+		}
+	}
+
+	public synchronized void clear() {
+		for (String key : cubes.keySet()) {
+			Entry entry = cubes.remove(key);
+			if (entry != null && entry.cube != null) {
+				totalBytes.addAndGet(-entry.cube.getEstimatedBytes());
+			}
+		}
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Memory limit of the cached cubes. The most recent cube is always kept, even when bigger than the limit.
+	 */
+	public synchronized void setMaxBytes(long maxBytes) {
+		if (maxBytes < 1) {
+			throw new IllegalArgumentException("Max bytes must be positive.");
+		}
+		this.maxBytes = maxBytes;
+		evictIfNeeded(null);
+	}
+
+	public int size() {
+		return cubes.size();
+	}
+
+	public long getEstimatedBytes() {
+		return totalBytes.get();
+	}
+
+	public String getStatistics() {
+		return "Survival cubes: "+ size() +" cached, "+ getEstimatedBytes() / 1024 +"/"+ maxBytes / 1024 +" KB. "
+				+ hitCount.get() +" hits, "+ missCount.get() +" misses, "+ evictionCount.get() +" evictions.";
+	}
+
+}
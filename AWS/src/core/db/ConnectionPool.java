@@ -0,0 +1,272 @@
+package core.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import core.exceptions.TooManyConnectionsException;
+
+/**
+ * Bounded and thread-safe JDBC connection pool.
+ * <p>
+ * Connections are reused (most recently released first), validated before being handed out again when they
+ * were idle for a while, and closed by a background evictor when idle longer than the idle timeout.
+ * Callers wait in arrival order for a free connection up to the wait timeout, after that a
+ * {@link TooManyConnectionsException} is thrown.
+ */
+public class ConnectionPool {
+
+	private static final Logger log = LogManager.getLogger(ConnectionPool.class);
+
+	private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+	private static final long VALIDATION_INTERVAL_MILLIS = 5 * 1000;
+
+	public interface ConnectionFactory {
+		Connection create() throws SQLException;
+	}
+
+	private static class PooledConnection {
+		final Connection connection;
+		volatile long lastUsed = System.currentTimeMillis();
+
+		PooledConnection(Connection connection) {
+			this.connection = connection;
+		}
+	}
+
+	private final ConnectionFactory factory;
+	private final int maxSize;
+	private final long waitTimeoutMillis;
+	private final long idleTimeoutMillis;
+
+	private final Semaphore permits;
+	private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+	private final Map<Connection, PooledConnection> active = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService evictor;
+
+	private final AtomicLong borrowCount = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	private final AtomicLong createdCount = new AtomicLong();
+	private final AtomicLong closedCount = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+
+	/**
+	 * @param factory creates new physical connections.
+	 * @param maxSize max connections opened at same time.
+	 * @param waitTimeoutMillis max time to wait for a free connection.
+	 * @param idleTimeoutMillis time after which an idle connection is closed.
+	 */
+	public ConnectionPool(ConnectionFactory factory, int maxSize, long waitTimeoutMillis, long idleTimeoutMillis) {
+
+		if (factory == null || maxSize < 1 || waitTimeoutMillis < 0 || idleTimeoutMillis < 1) {
+			throw new IllegalArgumentException("Factory, a positive size and valid timeouts are required.");
+		}
+
+		this.factory = factory;
+		this.maxSize = maxSize;
+		this.waitTimeoutMillis = waitTimeoutMillis;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.permits = new Semaphore(maxSize, true);
+
+		this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "ConnectionPool-evictor");
+			t.setDaemon(true);
+			return t;
+		});
+		long period = Math.max(1000, Math.min(idleTimeoutMillis / 2, 30 * 1000));
+		this.evictor.scheduleWithFixedDelay(this::evictIdleConnections, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns a free connection, creating a new one when none is idle and the pool is not full.
+	 *
+	 * @throws TooManyConnectionsException when no connection was released during the wait timeout.
+	 */
+	public Connection borrow() throws SQLException {
+
+		long waitStart = System.nanoTime();
+		boolean acquired = false;
+		try {
+			acquired = permits.tryAcquire(waitTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		recordWait(System.nanoTime() - waitStart);
+
+		if (!acquired) {
+			timeoutCount.incrementAndGet();
+			throw new TooManyConnectionsException(maxSize, active.size());
+		}
+
+		try {
+			PooledConnection pooled = idle.pollFirst();
+			while (pooled != null && !isUsable(pooled)) {
+				close(pooled);
+				pooled = idle.pollFirst();
+			}
+
+			if (pooled == null) {
+				pooled = new PooledConnection(factory.create());
+				createdCount.incrementAndGet();
+			}
+
+			pooled.lastUsed = System.currentTimeMillis();
+			active.put(pooled.connection, pooled);
+			return pooled.connection;
+
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Gives a connection back to the pool. Pending work is rolled back.
+	 * Connections not borrowed from this pool, or already released, are ignored.
+	 */
+	public void release(Connection connection) {
+
+		PooledConnection pooled = connection != null ? active.remove(connection) : null;
+		if (pooled == null) {
+			return;
+		}
+
+		try {
+			if (connection.isClosed()) {
+				closedCount.incrementAndGet();
+			} else {
+				if (!connection.getAutoCommit()) {
+					connection.rollback();
+				}
+				pooled.lastUsed = System.currentTimeMillis();
+				idle.offerFirst(pooled);
+			}
+		} catch (SQLException e) {
+			log.debug("Discarding connection on release: "+ e.getMessage());
+			close(pooled);
+		} finally {
+			permits.release();
+		}
+	}
+
+	private boolean isUsable(PooledConnection pooled) {
+		try {
+			if (pooled.connection.isClosed()) {
+				return false;
+			}
+			if (System.currentTimeMillis() - pooled.lastUsed > VALIDATION_INTERVAL_MILLIS) {
+				return pooled.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+			}
+			return true;
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void evictIdleConnections() {
+		long now = System.currentTimeMillis();
+		int evicted = 0;
+		// oldest connections are at the end of the deque
+		Iterator<PooledConnection> it = idle.descendingIterator();
+		while (it.hasNext()) {
+			PooledConnection pooled = it.next();
+			if (now - pooled.lastUsed > idleTimeoutMillis && idle.remove(pooled)) {
+				close(pooled);
+				evicted++;
+			}
+		}
+		if (evicted > 0) {
+			log.debug("Evicted "+ evicted +" idle connections. "+ getStatistics());
+		}
+	}
+
+	private void close(PooledConnection pooled) {
+		try {
+			pooled.connection.close();
+		} catch (SQLException e) {
+			log.debug("Error closing connection: "+ e.getMessage());
+		}
+		closedCount.incrementAndGet();
+	}
+
+	private void recordWait(long nanos) {
+		borrowCount.incrementAndGet();
+		totalWaitNanos.addAndGet(nanos);
+		long max = maxWaitNanos.get();
+		while (nanos > max && !maxWaitNanos.compareAndSet(max, nanos)) {
+			max = maxWaitNanos.get();
+		}
+	}
+
+	/**
+	 * Closes idle connections and stops the evictor. Borrowed connections are closed when released.
+	 */
+	public void shutdown() {
+		evictor.shutdownNow();
+		PooledConnection pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			close(pooled);
+		}
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public int getActiveCount() {
+		return active.size();
+	}
+
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	public int getWaitingCount() {
+		return permits.getQueueLength();
+	}
+
+	public long getBorrowCount() {
+		return borrowCount.get();
+	}
+
+	public long getCreatedCount() {
+		return createdCount.get();
+	}
+
+	public long getClosedCount() {
+		return closedCount.get();
+	}
+
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+
+	public double getAverageWaitMillis() {
+		long count = borrowCount.get();
+		return count > 0 ? totalWaitNanos.get() / (count * 1000000d) : 0;
+	}
+
+	public double getMaxWaitMillis() {
+		return maxWaitNanos.get() / 1000000d;
+	}
+
+	public String getStatistics() {
+		return "Pool: "+ getActiveCount() +" active, "+ getIdleCount() +" idle, "+ getWaitingCount() +" waiting (max "+ maxSize +"). "
+				+ getBorrowCount() +" borrows, "+ getCreatedCount() +" created, "+ getClosedCount() +" closed, "+ getTimeoutCount() +" timeouts. "
+				+ "Wait avg "+ String.format(Locale.US, "%.2f", getAverageWaitMillis()) +" ms, max "+ String.format(Locale.US, "%.2f", getMaxWaitMillis()) +" ms.";
+	}
+
+}
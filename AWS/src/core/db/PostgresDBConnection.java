@@ -7,8 +7,6 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -24,26 +22,37 @@ import core.util.PropertiesUtil;
 
 public class PostgresDBConnection {
 	
-	private static Map<Integer, Connection> pool = new HashMap<>();
-	
 	private static final Logger log = LogManager.getLogger(PostgresDBConnection.class);
 	
-	private static final int MAX_CONNECTIONS = 100;
+	private static final int DEFAULT_POOL_SIZE = 20;
+	private static final int DEFAULT_POOL_TIMEOUT_SECONDS = 60;
+	private static final int DEFAULT_POOL_IDLE_SECONDS = 300;
 	
 	private static PostgresDBConnection uniqueInstance = null;
 	private Connection connection;
 	
+	private ConnectionPool pool;
+	
 	
 	private PostgresDBConnection() {
 //		this.connection = createConnection();
+		
+		PropertiesUtil prop = PropertiesUtil.getInstance();
+		int size = getIntProperty(prop, "pg.pool.size", DEFAULT_POOL_SIZE);
+		int timeout = getIntProperty(prop, "pg.pool.timeout", DEFAULT_POOL_TIMEOUT_SECONDS);
+		int idle = getIntProperty(prop, "pg.pool.idle", DEFAULT_POOL_IDLE_SECONDS);
+		
+		this.pool = new ConnectionPool(this::createConnection, size, timeout * 1000L, idle * 1000L);
+		log.info("Connection pool created. Size: "+ size +", timeout: "+ timeout +"s, idle: "+ idle +"s.");
+	}
+	
+	private static int getIntProperty(PropertiesUtil prop, String key, int defaultValue) {
+		String value = prop.getProperty(key);
+		return StringUtils.isBlank(value) ? defaultValue : Integer.parseInt(value.trim());
 	}
 	
 	private Connection createConnection() {
 		
-		if (pool.size() > MAX_CONNECTIONS) {
-			throw new TooManyConnectionsException(pool.size(), MAX_CONNECTIONS);
-		}
-		
 		Connection newConnection = null;
 		
 		PropertiesUtil prop = PropertiesUtil.getInstance();
@@ -68,21 +77,22 @@ public class PostgresDBConnection {
 		}
 		
 		if (newConnection != null) {
-			pool.put(newConnection.hashCode(), newConnection);
-			log.info("Connected to "+ simpleDatabaseUrl +". "+ pool.size() +" connections.");
+			log.info("Connected to "+ simpleDatabaseUrl +". "+ (pool.getActiveCount() + pool.getIdleCount() + 1) +" connections.");
 		}
 		
 		return newConnection;
 	}
 	
+	/**
+	 * Gives the connection back to the pool.
+	 */
 	public static void closeConnection(Connection con) throws SQLException {
 		if (con != null) {
-			con.close();
-			pool.remove(con.hashCode());
+			getInstance().pool.release(con);
 		}
 	}
 	
-	public static PostgresDBConnection getInstance() {
+	public static synchronized PostgresDBConnection getInstance() {
 		if (uniqueInstance == null) {
 			uniqueInstance = new PostgresDBConnection();
 		}
@@ -93,8 +103,16 @@ public class PostgresDBConnection {
 		return connection;
 	}
 	
-	public Connection getConnectionFromPool() throws TooManyConnectionsException {
-		return createConnection();
+	public ConnectionPool getPool() {
+		return pool;
+	}
+	
+	/**
+	 * Borrows a connection from the pool, waiting for one to be released when the pool is full.
+	 * Give it back with {@link #closeConnection(Connection)}.
+	 */
+	public Connection getConnectionFromPool() throws TooManyConnectionsException, SQLException {
+		return pool.borrow();
 	}
 	
 	public void copyFromCSV(String table, File[] files) throws Exception {
@@ -127,8 +145,9 @@ public class PostgresDBConnection {
 			Runnable r = new Runnable() {
 				@Override
 				public void run() {
-					Connection newConnection = getConnectionFromPool();
+					Connection newConnection = null;
 					try {
+						newConnection = getConnectionFromPool();
 						CopyManager copyManager = new CopyManager((BaseConnection) newConnection);
 						
 						log.info("Importing file "+ csvFile.getAbsolutePath());
@@ -157,11 +176,74 @@ public class PostgresDBConnection {
 		executor.shutdown();
         while (!executor.isTerminated()) {
         	Thread.sleep(5000);
-			log.info("Waiting...");
+			log.info("Waiting... "+ pool.getStatistics());
         }
         log.info("Done importing "+ files.length +" files.");
 	}
 	
+	/**
+	 * Rebuilds the summary table with the death and censored counts of each (region, zone, instance, day of week,
+	 * hour of day, time to revocation) of the cases table. Must run after the cases are imported.
+	 */
+	public void refreshCasesSummary(String casesTable, String summaryTable) throws SQLException {
+		
+		if (StringUtils.isEmpty(casesTable) || StringUtils.isEmpty(summaryTable)) {
+			throw new IllegalArgumentException("Cases and summary tables are required to refresh the summary! ");
+		}
+		
+		long start = System.currentTimeMillis();
+		Connection con = getConnectionFromPool();
+		try {
+			Statement stmt = con.createStatement();
+			stmt.executeUpdate("TRUNCATE "+ summaryTable);
+			int rows = stmt.executeUpdate("INSERT INTO "+ summaryTable 
+					+ " (region, zone, instance, dayOfWeek, hourOfDay, timeToRevocation, deaths, censored) "
+					+ " SELECT region, zone, instance, dayOfWeek, hourOfDay, timeToRevocation, "
+					+ " SUM(CASE WHEN censored THEN 0 ELSE 1 END), SUM(CASE WHEN censored THEN 1 ELSE 0 END) "
+					+ " FROM "+ casesTable 
+					+ " GROUP BY region, zone, instance, dayOfWeek, hourOfDay, timeToRevocation");
+			stmt.close();
+			con.commit();
+			log.info("Summary "+ summaryTable +" refreshed with "+ rows +" rows in "+ (System.currentTimeMillis() - start) +" ms.");
+		} catch (SQLException e) {
+			con.rollback();
+			throw e;
+		} finally {
+			closeConnection(con);
+		}
+	}
+	
+	/**
+	 * Rebuilds the watermark of each series from its cases after a full import. The last record of a series is the
+	 * end of its censored cases, so the latest end time of the cases is taken.
+	 */
+	public void refreshCasesWatermark(String casesTable, String watermarkTable) throws SQLException {
+		
+		if (StringUtils.isEmpty(casesTable) || StringUtils.isEmpty(watermarkTable)) {
+			throw new IllegalArgumentException("Cases and watermark tables are required to refresh the watermark! ");
+		}
+		
+		long start = System.currentTimeMillis();
+		Connection con = getConnectionFromPool();
+		try {
+			Statement stmt = con.createStatement();
+			stmt.executeUpdate("TRUNCATE "+ watermarkTable);
+			int rows = stmt.executeUpdate("INSERT INTO "+ watermarkTable 
+					+ " (region, zone, instance, lastTime) "
+					+ " SELECT region, zone, instance, MAX(endTime) "
+					+ " FROM "+ casesTable 
+					+ " GROUP BY region, zone, instance");
+			stmt.close();
+			con.commit();
+			log.info("Watermark "+ watermarkTable +" refreshed with "+ rows +" rows in "+ (System.currentTimeMillis() - start) +" ms.");
+		} catch (SQLException e) {
+			con.rollback();
+			throw e;
+		} finally {
+			closeConnection(con);
+		}
+	}
+	
 	public static void main(String[] args) throws Exception {
 		PostgresDBConnection.getInstance().copyFromCSV("cases", Paths.get("/tmp/exec/all_instances_all_regions").toFile().listFiles());
 	}
@@ -0,0 +1,180 @@
+package core.executor.cbr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Hands the cases to another sink written by its own thread, so generation and writing overlap.
+ * <p>
+ * Cases go in batches through a bounded queue. When the writer falls behind the queue fills up and 
+ * {@link #accept(Case)} waits, so at most (batches + 2) * batch size cases are held, whatever the length of the series.
+ * A failure of the writer is thrown by the next accept, or by close as an IOException; the writer keeps draining the 
+ * queue meanwhile. Then close aborts the other sink, as {@link #abort()} does without writing the remaining cases.
+ */
+public class BufferedCaseSink implements CaseSink {
+
+	public static final int DEFAULT_BATCH_SIZE = 4096;
+	public static final int DEFAULT_BATCHES = 4;
+
+	private static final List<Case> END = new ArrayList<>(0);
+
+	private final CaseSink sink;
+	private final int batchSize;
+	private final BlockingQueue<List<Case>> queue;
+	private final Thread writer;
+
+	private List<Case> batch;
+	private long count = 0;
+	private boolean closed = false;
+	private volatile boolean aborted = false;
+	private volatile RuntimeException failure;
+
+	public BufferedCaseSink(CaseSink sink) {
+		this(sink, DEFAULT_BATCH_SIZE, DEFAULT_BATCHES);
+	}
+
+	public BufferedCaseSink(CaseSink sink, int batchSize, int batches) {
+		if (batchSize < 1 || batches < 1) {
+			throw new IllegalArgumentException("Batch size and batches must be positive.");
+		}
+		this.sink = sink;
+		this.batchSize = batchSize;
+		this.queue = new ArrayBlockingQueue<>(batches);
+		this.batch = new ArrayList<>(batchSize);
+		this.writer = new Thread(this::write, "CaseSinkWriter");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	private void write() {
+		while (true) {
+			List<Case> cases;
+			try {
+				cases = queue.take();
+			} catch (InterruptedException e) {
+				failure = new IllegalStateException("Case writer interrupted.", e);
+				return;
+			}
+			if (cases == END) {
+				return;
+			}
+			if (failure == null && !aborted) {
+				try {
+					for (Case c : cases) {
+						sink.accept(c);
+					}
+				} catch (RuntimeException e) {
+					failure = e;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void accept(Case c) {
+		if (closed) {
+			throw new IllegalStateException("Sink is closed.");
+		}
+		checkFailure();
+		batch.add(c);
+		count++;
+		if (batch.size() == batchSize) {
+			put(batch);
+			batch = new ArrayList<>(batchSize);
+		}
+	}
+
+	private void put(List<Case> cases) {
+		try {
+			// waits while the writer is behind
+			queue.put(cases);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the case writer.", e);
+		}
+	}
+
+	private void checkFailure() {
+		if (failure != null) {
+			throw new IllegalStateException("Case writer failed: "+ failure.getMessage(), failure);
+		}
+	}
+
+	/**
+	 * @return number of cases received, some of them may not be written yet.
+	 */
+	@Override
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Writes the remaining cases and closes the other sink. When the writer failed, or the wait for it was 
+	 * interrupted, the other sink is aborted instead and an IOException thrown.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (!batch.isEmpty()) {
+				put(batch);
+			}
+			put(END);
+			writer.join();
+		} catch (InterruptedException | RuntimeException e) {
+			if (e instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+			}
+			stopWriter();
+			sink.abort();
+			throw new IOException("Interrupted while waiting for the case writer.", e);
+		} finally {
+			batch = null;
+		}
+		if (failure != null) {
+			sink.abort();
+			throw new IOException("Case writer failed: "+ failure.getMessage(), failure);
+		}
+		sink.close();
+	}
+
+	@Override
+	public void abort() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		batch = null;
+		stopWriter();
+		sink.abort();
+	}
+
+	/**
+	 * Makes the writer skip the cases left and waits until it has exited, so the other sink is used by one thread
+	 * only. An interrupt is kept for after the wait.
+	 */
+	private void stopWriter() {
+		aborted = true;
+		// only this thread puts, so END fits once the queue is cleared
+		queue.clear();
+		queue.offer(END);
+		boolean interrupted = Thread.interrupted();
+		while (writer.isAlive()) {
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,25 @@
+package core.executor.cbr;
+
+import java.io.Closeable;
+
+/**
+ * Receives the cases as the generator produces them, so a series never has all its cases in memory.
+ * Errors of writing are thrown as unchecked exceptions ({@link java.io.UncheckedIOException} for IO). Cases
+ * are complete only after {@link #close()}. When the generation fails the sink is given up with {@link #abort()} 
+ * instead, so a part of a series is never saved.
+ */
+public interface CaseSink extends Closeable {
+
+	void accept(Case c);
+
+	/**
+	 * @return number of cases received.
+	 */
+	long getCount();
+
+	/**
+	 * Discards the cases received and releases the sink, without throwing. Close does nothing afterwards.
+	 */
+	void abort();
+
+}
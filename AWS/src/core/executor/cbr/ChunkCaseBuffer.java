@@ -0,0 +1,195 @@
+package core.executor.cbr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cases of one chunk of a series generated on a fork/join pool into a bounded buffer of its own, to be sent to the
+ * sink in the order of the chunks by {@link #drainTo(CaseSink)}. A chunk ahead of the one being drained waits
+ * (as a {@link ForkJoinPool.ManagedBlocker}) when its buffer is full, so at most (batches + 1) * batch size cases
+ * are held by each chunk in flight.
+ * <p>
+ * A chunk not started by the pool when its turn comes is generated by the draining thread straight into the sink.
+ */
+public class ChunkCaseBuffer extends RecursiveAction implements CaseSink {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int DEFAULT_BATCH_SIZE = 1024;
+	public static final int DEFAULT_BATCHES = 4;
+
+	private static final List<Case> END = new ArrayList<>(0);
+
+	/**
+	 * Generation of the cases of the chunk.
+	 */
+	public interface Generator {
+		void generate(CaseSink sink);
+	}
+
+	private final Generator generator;
+	private final int batchSize;
+	private final BlockingQueue<List<Case>> queue;
+	private final AtomicBoolean started = new AtomicBoolean();
+
+	private List<Case> batch;
+	private long count = 0;
+	private volatile boolean discarded = false;
+	private volatile Throwable failure;
+
+	public ChunkCaseBuffer(Generator generator) {
+		this(generator, DEFAULT_BATCH_SIZE, DEFAULT_BATCHES);
+	}
+
+	public ChunkCaseBuffer(Generator generator, int batchSize, int batches) {
+		if (batchSize < 1 || batches < 1) {
+			throw new IllegalArgumentException("Batch size and batches must be positive.");
+		}
+		this.generator = generator;
+		this.batchSize = batchSize;
+		this.queue = new ArrayBlockingQueue<>(batches);
+	}
+
+	@Override
+	protected void compute() {
+		if (!started.compareAndSet(false, true)) {
+			// generated by the draining thread
+			return;
+		}
+		batch = new ArrayList<>(batchSize);
+		try {
+			generator.generate(this);
+			if (!batch.isEmpty()) {
+				put(batch);
+			}
+		} catch (CancellationException e) {
+			return;
+		} catch (RuntimeException | Error e) {
+			failure = e;
+		} finally {
+			batch = null;
+		}
+		try {
+			put(END);
+		} catch (CancellationException e) {
+			// nobody is waiting for the chunk
+		}
+	}
+
+	@Override
+	public void accept(Case c) {
+		batch.add(c);
+		count++;
+		if (batch.size() == batchSize) {
+			put(batch);
+			batch = new ArrayList<>(batchSize);
+		}
+	}
+
+	private void put(List<Case> cases) {
+		Offer offer = new Offer(cases);
+		try {
+			ForkJoinPool.managedBlock(offer);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Interrupted while waiting for the chunk to be drained.");
+		}
+		if (!offer.done) {
+			throw new CancellationException("Chunk discarded.");
+		}
+	}
+
+	/**
+	 * Waits for the chunk to be drained, giving up when it is discarded.
+	 */
+	private final class Offer implements ForkJoinPool.ManagedBlocker {
+
+		private final List<Case> cases;
+		private boolean done = false;
+
+		private Offer(List<Case> cases) {
+			this.cases = cases;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			return done || discarded || (done = queue.offer(cases));
+		}
+
+		@Override
+		public boolean block() throws InterruptedException {
+			while (!isReleasable()) {
+				done = queue.offer(cases, 100, TimeUnit.MILLISECONDS);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Sends the cases of the chunk to the sink as they are generated, until the end of the chunk. A failure of the
+	 * generation is thrown here.
+	 */
+	public void drainTo(CaseSink sink) {
+
+		if (started.compareAndSet(false, true)) {
+			generator.generate(sink);
+			return;
+		}
+
+		while (true) {
+			List<Case> cases;
+			try {
+				cases = queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for the chunk.", e);
+			}
+			if (cases == END) {
+				break;
+			}
+			for (Case c : cases) {
+				sink.accept(c);
+			}
+		}
+
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+	}
+
+	/**
+	 * Stops the generation of a chunk that will not be drained and drops its buffer.
+	 */
+	public void discard() {
+		discarded = true;
+		started.set(true);
+		queue.clear();
+	}
+
+	/**
+	 * @return number of cases generated by the pool, not counting a chunk generated by the draining thread.
+	 */
+	@Override
+	public long getCount() {
+		return count;
+	}
+
+	@Override
+	public void close() {
+	}
+
+	@Override
+	public void abort() {
+		discard();
+	}
+
+}
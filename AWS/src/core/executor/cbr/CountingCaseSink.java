@@ -0,0 +1,45 @@
+package core.executor.cbr;
+
+/**
+ * Only counts the cases, to measure the generation without writing them.
+ */
+public class CountingCaseSink implements CaseSink {
+
+	private long count = 0;
+	private long censored = 0;
+
+	@Override
+	public void accept(Case c) {
+		count++;
+		if (c.isCensored()) {
+			censored++;
+		}
+	}
+
+	@Override
+	public long getCount() {
+		return count;
+	}
+
+	public long getCensoredCount() {
+		return censored;
+	}
+
+	public long getDeathCount() {
+		return count - censored;
+	}
+
+	@Override
+	public void close() {
+	}
+
+	@Override
+	public void abort() {
+	}
+
+	@Override
+	public String toString() {
+		return count +" cases, "+ censored +" censored";
+	}
+
+}
@@ -0,0 +1,98 @@
+package core.executor.cbr;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Appends the cases to a CSV file, as {@link Case#toStringCase()} lines after a {@link Case#toStringHead()} header 
+ * written when the file is created. The file is imported by COPY. Abort cuts the file back to its length before the 
+ * sink, deleting it when the sink created it.
+ */
+public class FileCaseSink implements CaseSink {
+
+	private static final Logger log = LogManager.getLogger(FileCaseSink.class);
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File file;
+	private final Writer writer;
+	private final boolean existed;
+	private final long initLength;
+	private long count = 0;
+	private boolean closed = false;
+
+	public FileCaseSink(File file) throws IOException {
+		this.file = file;
+		this.existed = file.exists();
+		this.initLength = existed ? file.length() : 0;
+		this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8), BUFFER_SIZE);
+		if (!existed) {
+			writer.write(Case.toStringHead() + System.lineSeparator());
+		}
+	}
+
+	@Override
+	public void accept(Case c) {
+		try {
+			writer.write(c.toStringCase());
+			writer.write(System.lineSeparator());
+			count++;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to write to "+ file.getAbsolutePath(), e);
+		}
+	}
+
+	@Override
+	public long getCount() {
+		return count;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		writer.close();
+	}
+
+	@Override
+	public void abort() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			writer.close();
+		} catch (IOException e) {
+			// the file is cut back anyway
+		}
+		try {
+			if (!existed) {
+				Files.deleteIfExists(file.toPath());
+			} else {
+				try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+					raf.setLength(initLength);
+				}
+			}
+		} catch (IOException e) {
+			log.error("Failed to discard the cases written to "+ file.getAbsolutePath() +": "+ e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+package core.executor.cbr;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the cases in memory, in the order received.
+ */
+public class ListCaseSink implements CaseSink {
+
+	private final List<Case> cases;
+
+	public ListCaseSink() {
+		this(new ArrayList<>());
+	}
+
+	public ListCaseSink(List<Case> cases) {
+		this.cases = cases;
+	}
+
+	@Override
+	public void accept(Case c) {
+		cases.add(c);
+	}
+
+	@Override
+	public long getCount() {
+		return cases.size();
+	}
+
+	public List<Case> getCases() {
+		return cases;
+	}
+
+	@Override
+	public void close() {
+	}
+
+	@Override
+	public void abort() {
+		cases.clear();
+	}
+
+}
@@ -13,16 +13,16 @@ public class GlobalCount {
 		}
 	}
 	
-	public static Integer getCount(String key) {
+	public static synchronized Integer getCount(String key) {
 		return counters.get(key);
 	}
 	
-	public static void addCount(String key) {
+	public static synchronized void addCount(String key) {
 		ensurePresenceOfKey(key);
 		counters.put(key, counters.get(key) + 1);
 	}
 
-	public static void reduceCount(String key) {
+	public static synchronized void reduceCount(String key) {
 		ensurePresenceOfKey(key);
 		counters.put(key, counters.get(key) - 1);
 	}
@@ -1,9 +1,11 @@
 package core.util;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import cloud.aws.dao.SpotDAO;
 import core.executor.cbr.Case;
@@ -35,9 +37,14 @@ import core.executor.cbr.Case;
 public class KaplanMeierEstimator {
 
     /**
-     * Return the kaplan-meier curve as a list of intervals.
+     * Standard normal quantile of the 95% confidence bands.
+     */
+    public static final double Z_95 = 1.959963984540054;
+
+    /**
+     * Return the kaplan-meier curve as a list of intervals, with the Greenwood sum of each interval.
      *
-     * @param time     times in ascending order
+     * @param time     times in any order, copies of unsorted arrays are sorted in linear time by {@link MinuteSort}
      * @param censured array of boolean values indicating if the event is a failure or censure
      * @return
      */
@@ -49,6 +56,11 @@ public class KaplanMeierEstimator {
         if (time.length < 2) {
         	throw new RuntimeException("Time lenght is too small.");
         }
+        if (!MinuteSort.isSorted(time)) {
+            time = time.clone();
+            censured = censured.clone();
+            MinuteSort.sort(time, censured);
+        }
 
 
         // step 1 -- find the intervals
@@ -69,6 +81,7 @@ public class KaplanMeierEstimator {
         // init variables.  Initially everyone is at risk, and the cumulative survival is 1
         float atRisk = time.length;
         float cumulativeSurvival = 1;
+        double greenwood = 0;
         Iterator<Interval> intervalIter = intervals.iterator();
         Interval currentInterval = intervalIter.next();
         currentInterval.setCumulativeSurvival(cumulativeSurvival);
@@ -84,12 +97,14 @@ public class KaplanMeierEstimator {
                 float survivors = atRisk - currentInterval.getNumberDied();
                 float tmp = survivors / atRisk;
                 cumulativeSurvival *= tmp;
+                greenwood += currentInterval.getNumberDied() / ((double) atRisk * survivors);
 
                 // Skip to the next interval
                 atRisk -= currentInterval.getNumberDied();
                 while (intervalIter.hasNext() && t > currentInterval.getEnd()) {
                     currentInterval = intervalIter.next();
                     currentInterval.setCumulativeSurvival(cumulativeSurvival);
+                    currentInterval.setGreenwood(greenwood);
                 }
             }
 
@@ -216,8 +231,10 @@ public class KaplanMeierEstimator {
         private int start;
         private int end;
         private int numberDied;
+        private int numberCensured;
         private IntArrayList censored = new KaplanMeierEstimator(). new IntArrayList();
         private float cumulativeSurvival;
+        private double greenwood;
 
 
         public Interval(int start, int end) {
@@ -225,12 +242,31 @@ public class KaplanMeierEstimator {
             this.setEnd(end);
         }
 
+        /**
+         * Interval with counts only, censored times are not kept.
+         */
+        public Interval(int start, int end, int numberDied, int numberCensured, float cumulativeSurvival) {
+            this(start, end);
+            this.numberDied = numberDied;
+            this.numberCensured = numberCensured;
+            this.cumulativeSurvival = cumulativeSurvival;
+        }
+
+        /**
+         * Interval with counts only and the Greenwood sum at its start.
+         */
+        public Interval(int start, int end, int numberDied, int numberCensured, float cumulativeSurvival, double greenwood) {
+            this(start, end, numberDied, numberCensured, cumulativeSurvival);
+            this.greenwood = greenwood;
+        }
+
         void incDied() {
             numberDied++;
         }
 
         void addCensure(int time) {
             censored.add(time);
+            numberCensured++;
         }
 
         public int getStart() {
@@ -267,7 +303,39 @@ public class KaplanMeierEstimator {
         }
 
         public int getNumberCensured() {
-            return censored.size();
+            return numberCensured;
+        }
+
+        /**
+         * @return Greenwood sum of d / (n * (n - d)) of the previous intervals.
+         */
+        public double getGreenwood() {
+            return greenwood;
+        }
+
+        public void setGreenwood(double greenwood) {
+            this.greenwood = greenwood;
+        }
+
+        /**
+         * @return Greenwood variance of the cumulative survival.
+         */
+        public double getVariance() {
+            return (double) cumulativeSurvival * cumulativeSurvival * greenwood;
+        }
+
+        /**
+         * @return lower bound of the 95% confidence band of the cumulative survival.
+         */
+        public double getLowerBound() {
+            return lowerBound(cumulativeSurvival, greenwood, Z_95);
+        }
+
+        /**
+         * @return upper bound of the 95% confidence band of the cumulative survival.
+         */
+        public double getUpperBound() {
+            return upperBound(cumulativeSurvival, greenwood, Z_95);
         }
     }
     
@@ -292,14 +360,117 @@ public class KaplanMeierEstimator {
     	return compute(cases, censored);
     }
 
+    /**
+     * Return the kaplan-meier curve of cases given as counts, as read from the cases summary.
+     *
+     * @param times    distinct times in ascending order
+     * @param deaths   deaths at each time
+     * @param censored censored cases at each time
+     * @return the kaplan-meier curve as a list of intervals.
+     * @see #compute(SurvivalCounts)
+     */
+    public static List<Interval> compute(int[] times, int[] deaths, int[] censored) {
+        return compute(SurvivalCounts.of(times, deaths, censored));
+    }
+
+    /**
+     * Return the kaplan-meier curve of cases given as counts, in time proportional to the number of distinct times.
+     * <p>
+     * The intervals and survivals are the same of {@link #compute(int[], boolean[])} with the cases expanded, as the
+     * float operations are the same, done once per interval. Censored times are not kept in the intervals, only their count.
+     *
+     * @param counts deaths and censored cases of each distinct time.
+     * @return the kaplan-meier curve as a list of intervals.
+     */
+    public static List<Interval> compute(SurvivalCounts counts) {
+
+        int total = counts.getTotal();
+        if (total < 2) {
+            throw new RuntimeException("Time lenght is too small.");
+        }
+
+        List<Interval> intervals = new ArrayList<>();
+
+        // Initially everyone is at risk, and the cumulative survival is 1
+        float atRisk = total;
+        float cumulativeSurvival = 1;
+        double greenwood = 0;
+
+        // counts of the interval being filled, closed at each death time after its start
+        int startTime = 0;
+        int died = 0;
+        int censured = 0;
+        for (int i = 0; i < counts.size(); i++) {
+            int t = counts.getTime(i);
+            died += counts.getDeaths(i);
+            censured += counts.getCensored(i);
+
+            boolean last = i == counts.size() - 1;
+            if ((counts.getDeaths(i) > 0 || last) && t > startTime) {
+                intervals.add(new Interval(startTime, t, died, censured, cumulativeSurvival, greenwood));
+                startTime = t;
+
+                // survival and # at risk for the start of the next interval
+                atRisk -= censured;
+                float survivors = atRisk - died;
+                float tmp = survivors / atRisk;
+                cumulativeSurvival *= tmp;
+                greenwood += died / ((double) atRisk * survivors);
+                atRisk -= died;
+
+                died = 0;
+                censured = 0;
+            }
+        }
+        if (intervals.isEmpty()) {
+            throw new NoSuchElementException("No time greater than zero.");
+        }
+
+        return intervals;
+    }
+
+    /**
+     * Lower bound of the log-log confidence band of a survival.
+     *
+     * @param survival  cumulative survival
+     * @param greenwood Greenwood sum of d / (n * (n - d)) of the previous intervals
+     * @param z         standard normal quantile of the confidence, as {@link #Z_95}
+     */
+    public static double lowerBound(double survival, double greenwood, double z) {
+        return bound(survival, greenwood, z);
+    }
+
+    /**
+     * Upper bound of the log-log confidence band of a survival.
+     * @see #lowerBound(double, double, double)
+     */
+    public static double upperBound(double survival, double greenwood, double z) {
+        return bound(survival, greenwood, -z);
+    }
+
+    private static double bound(double survival, double greenwood, double z) {
+        if (survival <= 0 || survival >= 1 || greenwood == 0) {
+            return survival;
+        }
+        // standard error of log(-log(S))
+        double logSurvival = Math.log(survival);
+        double standardError = Math.sqrt(greenwood) / -logSurvival;
+        return Math.pow(survival, Math.exp(z * standardError));
+    }
+
     public static void main(String[] args) throws SQLException {
 
 //        int[] survival = {1, 2, 3, 4, 5, 10, 120};
 //        boolean[] alive = {false, false, false, false, false, false, true};
         
         SpotDAO dao = new SpotDAO();
-//        List<Case> casesMap = dao.findCases("m4.large", 3, 20);
-        List<Case> casesMap = dao.findCases("m3.medium", 3, 10);
+        List<Case> casesMap;
+        try {
+//            casesMap = dao.findCases("m4.large", 3, 20);
+            casesMap = dao.findCases("m3.medium", 3, 10);
+        } finally {
+            dao.closeConnection();
+        }
         
         
         List<Interval> intervals = compute(casesMap);
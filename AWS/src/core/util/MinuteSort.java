@@ -0,0 +1,151 @@
+package core.util;
+
+import java.util.Arrays;
+
+/**
+ * Linear time sort of case times (minutes to revocation) carrying their censored flags.
+ * <p>
+ * Times are small bounded integers, so a counting sort is used when the range of the times is not much bigger than
+ * their number, and an LSD radix sort of 8 bit digits (one pass per byte of the range) otherwise.
+ * The order of deaths and censored cases with the same time is not kept, the Kaplan-Meier curve does not depend on it.
+ */
+public class MinuteSort {
+
+	private static final int RADIX_BITS = 8;
+	private static final int RADIX = 1 << RADIX_BITS;
+
+	private MinuteSort() {
+	}
+
+	public static boolean isSorted(int[] time) {
+		return isSorted(time, time.length);
+	}
+
+	/**
+	 * @return whether the first length times are in ascending order.
+	 */
+	public static boolean isSorted(int[] time, int length) {
+		for (int i = 1; i < length; i++) {
+			if (time[i] < time[i - 1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Sorts the times in ascending order, in place, moving each censored flag with its time.
+	 */
+	public static void sort(int[] time, boolean[] censored) {
+		if (time.length != censored.length) {
+			throw new IllegalArgumentException("Time and censored sizes are different.");
+		}
+		sort(time, censored, time.length);
+	}
+
+	/**
+	 * Sorts the first length times in ascending order, in place, moving each censored flag with its time.
+	 * Elements after length are not touched.
+	 */
+	public static void sort(int[] time, boolean[] censored, int length) {
+		if (length > time.length || length > censored.length) {
+			throw new IllegalArgumentException("Length is greater than time or censored sizes.");
+		}
+		int n = length;
+		if (n < 2) {
+			return;
+		}
+
+		int min = time[0];
+		int max = time[0];
+		boolean sorted = true;
+		for (int i = 1; i < n; i++) {
+			if (time[i] < time[i - 1]) {
+				sorted = false;
+			}
+			if (time[i] < min) {
+				min = time[i];
+			} else if (time[i] > max) {
+				max = time[i];
+			}
+		}
+		if (sorted) {
+			return;
+		}
+
+		long range = (long) max - min + 1;
+		if (range <= 2L * n + RADIX) {
+			countingSort(time, censored, n, min, (int) range);
+		} else {
+			radixSort(time, censored, n, min, range);
+		}
+	}
+
+	private static void countingSort(int[] time, boolean[] censored, int length, int min, int range) {
+		int[] deaths = new int[range];
+		int[] censures = new int[range];
+		for (int i = 0; i < length; i++) {
+			if (censored[i]) {
+				censures[time[i] - min]++;
+			} else {
+				deaths[time[i] - min]++;
+			}
+		}
+		// deaths first at each time
+		int n = 0;
+		for (int v = 0; v < range; v++) {
+			for (int k = deaths[v]; k > 0; k--) {
+				time[n] = v + min;
+				censored[n++] = false;
+			}
+			for (int k = censures[v]; k > 0; k--) {
+				time[n] = v + min;
+				censored[n++] = true;
+			}
+		}
+	}
+
+	private static void radixSort(int[] time, boolean[] censored, int n, int min, long range) {
+		// keys relative to min are non negative and fit in 32 unsigned bits
+		int[] keys = new int[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = time[i] - min;
+		}
+		boolean[] flags = Arrays.copyOf(censored, n);
+		int[] keysBuffer = new int[n];
+		boolean[] flagsBuffer = new boolean[n];
+		int[] count = new int[RADIX];
+
+		for (int shift = 0; shift < 32 && (range - 1) >>> shift > 0; shift += RADIX_BITS) {
+			Arrays.fill(count, 0);
+			for (int i = 0; i < n; i++) {
+				count[(keys[i] >>> shift) & (RADIX - 1)]++;
+			}
+			int position = 0;
+			for (int digit = 0; digit < RADIX; digit++) {
+				int c = count[digit];
+				count[digit] = position;
+				position += c;
+			}
+			for (int i = 0; i < n; i++) {
+				int p = count[(keys[i] >>> shift) & (RADIX - 1)]++;
+				keysBuffer[p] = keys[i];
+				flagsBuffer[p] = flags[i];
+			}
+			int[] swapKeys = keys;
+			keys = keysBuffer;
+			keysBuffer = swapKeys;
+			boolean[] swapFlags = flags;
+			flags = flagsBuffer;
+			flagsBuffer = swapFlags;
+		}
+
+		for (int i = 0; i < n; i++) {
+			time[i] = keys[i] + min;
+		}
+		if (flags != censored) {
+			System.arraycopy(flags, 0, censored, 0, n);
+		}
+	}
+
+}
@@ -0,0 +1,163 @@
+package core.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Kaplan-Meier curve of one bucket kept up to date as cases arrive, in any order.
+ * <p>
+ * Cases are kept as death and censored counts of each distinct time, so an update costs O(log k) for k distinct
+ * times and nothing is sorted again. Every case changes the number at risk of all intervals, so the curve is
+ * rebuilt from the counts in O(k) by {@link KaplanMeierEstimator#compute(SurvivalCounts)} on the first query after
+ * updates, and is the same curve of computing it from all cases. Methods are synchronized, the curves returned
+ * are immutable snapshots.
+ */
+public class OnlineKaplanMeierEstimator {
+
+	// time -> {deaths, censored}
+	private final TreeMap<Integer, int[]> counts = new TreeMap<>();
+	private int size = 0;
+
+	private SurvivalFunction function;
+	private boolean changed = false;
+
+	public OnlineKaplanMeierEstimator() {
+	}
+
+	/**
+	 * Starts with the given cases, as a bucket already loaded.
+	 */
+	public OnlineKaplanMeierEstimator(SurvivalCounts initial) {
+		for (int i = 0; i < initial.size(); i++) {
+			add(initial.getTime(i), initial.getDeaths(i), initial.getCensored(i));
+		}
+	}
+
+	public synchronized void addDeath(int time) {
+		add(time, 1, 0);
+	}
+
+	public synchronized void addCensored(int time) {
+		add(time, 0, 1);
+	}
+
+	public synchronized void add(int time, boolean censored) {
+		add(time, censored ? 0 : 1, censored ? 1 : 0);
+	}
+
+	/**
+	 * A case censored at a time was revoked later: it becomes a death at the revocation time.
+	 */
+	public synchronized void censoredToDeath(int censoredTime, int deathTime) {
+		if (deathTime < censoredTime) {
+			throw new IllegalArgumentException("Death time "+ deathTime +" is before censored time "+ censoredTime +".");
+		}
+		remove(censoredTime, true);
+		add(deathTime, 1, 0);
+	}
+
+	/**
+	 * Removes a case, as when it is discarded or was saved twice.
+	 */
+	public synchronized void remove(int time, boolean censored) {
+		int[] count = counts.get(time);
+		int index = censored ? 1 : 0;
+		if (count == null || count[index] == 0) {
+			throw new IllegalArgumentException("No "+ (censored ? "censored case" : "death") +" at time "+ time +".");
+		}
+		count[index]--;
+		if (count[0] == 0 && count[1] == 0) {
+			counts.remove(time);
+		}
+		size--;
+		changed = true;
+	}
+
+	private void add(int time, int deaths, int censored) {
+		int[] count = counts.get(time);
+		if (count == null) {
+			count = new int[2];
+			counts.put(time, count);
+		}
+		count[0] += deaths;
+		count[1] += censored;
+		size += deaths + censored;
+		changed = true;
+	}
+
+	/**
+	 * @return number of cases.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @return current counts, as an immutable snapshot.
+	 */
+	public synchronized SurvivalCounts getCounts() {
+		int[] times = new int[counts.size()];
+		int[] deaths = new int[counts.size()];
+		int[] censored = new int[counts.size()];
+		int i = 0;
+		for (Map.Entry<Integer, int[]> e : counts.entrySet()) {
+			times[i] = e.getKey();
+			deaths[i] = e.getValue()[0];
+			censored[i] = e.getValue()[1];
+			i++;
+		}
+		return SurvivalCounts.of(times, deaths, censored);
+	}
+
+	/**
+	 * @return the current curve, or null when it can not be computed (less than two cases, or no time greater than zero).
+	 */
+	public synchronized SurvivalFunction getFunction() {
+		if (changed) {
+			changed = false;
+			function = null;
+			if (size >= 2) {
+				try {
+					function = SurvivalFunction.compute(getCounts());
+				} catch (RuntimeException e) {
+					// no curve yet
+				}
+			}
+		}
+		return function;
+	}
+
+	public synchronized boolean hasCurve() {
+		return getFunction() != null;
+	}
+
+	/**
+	 * @see SurvivalFunction#getSurvival(int)
+	 */
+	public synchronized float getSurvival(int time) {
+		return requireFunction().getSurvival(time);
+	}
+
+	/**
+	 * @see SurvivalFunction#getTime(double)
+	 */
+	public synchronized int getTime(double confidence) {
+		return requireFunction().getTime(confidence);
+	}
+
+	/**
+	 * @see SurvivalFunction#getTimeAtLowerBound(double)
+	 */
+	public synchronized int getTimeAtLowerBound(double confidence) {
+		return requireFunction().getTimeAtLowerBound(confidence);
+	}
+
+	private SurvivalFunction requireFunction() {
+		SurvivalFunction f = getFunction();
+		if (f == null) {
+			throw new IllegalStateException("Not enough cases to compute the survival curve.");
+		}
+		return f;
+	}
+
+}
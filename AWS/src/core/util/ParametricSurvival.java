@@ -0,0 +1,259 @@
+package core.util;
+
+/**
+ * Exponential or Weibull survival model, S(t) = exp(-(t / scale)^shape), fitted by maximum likelihood with censored
+ * cases. Exponential is the Weibull with shape 1.
+ * <p>
+ * A model is a few doubles: survival and quantiles are O(1), instead of searching a Kaplan-Meier curve. Fits read
+ * the {@link SurvivalCounts} of a bucket, so each iteration costs O(distinct times). Times are in minutes and
+ * times under {@link #MIN_TIME} (revoked in the same minute) are taken as {@link #MIN_TIME}, as log(0) is undefined.
+ */
+public class ParametricSurvival {
+
+	public enum Type {
+		EXPONENTIAL(1), WEIBULL(2);
+
+		private final int parameters;
+
+		private Type(int parameters) {
+			this.parameters = parameters;
+		}
+
+		public int getParameters() {
+			return parameters;
+		}
+	}
+
+	public static final double MIN_TIME = 0.5;
+
+	private static final int MAX_ITERATIONS = 100;
+	private static final double TOLERANCE = 1e-10;
+
+	private final Type type;
+	private final double shape;
+	private final double scale;
+	private final double logLikelihood;
+	private final int caseCount;
+	private final double distance;
+
+	private ParametricSurvival(Type type, double shape, double scale, double logLikelihood, int caseCount) {
+		this(type, shape, scale, logLikelihood, caseCount, Double.NaN);
+	}
+
+	private ParametricSurvival(Type type, double shape, double scale, double logLikelihood, int caseCount, double distance) {
+		this.type = type;
+		this.shape = shape;
+		this.scale = scale;
+		this.logLikelihood = logLikelihood;
+		this.caseCount = caseCount;
+		this.distance = distance;
+	}
+
+	/**
+	 * Fits the model of the type and measures its distance to the Kaplan-Meier curve of the counts.
+	 *
+	 * @return the model, or null when there are no deaths to fit.
+	 */
+	public static ParametricSurvival fit(Type type, SurvivalCounts counts) {
+		ParametricSurvival model = type == Type.EXPONENTIAL ? fitExponential(counts) : fitWeibull(counts);
+		if (model == null || counts.getTotal() < 2) {
+			return model;
+		}
+		try {
+			double distance = model.distanceTo(SurvivalFunction.compute(counts));
+			return new ParametricSurvival(model.type, model.shape, model.scale, model.logLikelihood, model.caseCount, distance);
+		} catch (RuntimeException e) {
+			// no curve to compare
+			return model;
+		}
+	}
+
+	/**
+	 * Exponential MLE: scale is the total time at risk over the deaths.
+	 *
+	 * @return the model, or null when there are no deaths.
+	 */
+	public static ParametricSurvival fitExponential(SurvivalCounts counts) {
+		double totalTime = 0;
+		double sumLogDeaths = 0;
+		int deaths = 0;
+		for (int i = 0; i < counts.size(); i++) {
+			double t = time(counts.getTime(i));
+			int cases = counts.getDeaths(i) + counts.getCensored(i);
+			totalTime += cases * t;
+			deaths += counts.getDeaths(i);
+			sumLogDeaths += counts.getDeaths(i) * Math.log(t);
+		}
+		if (deaths == 0) {
+			return null;
+		}
+		double scale = totalTime / deaths;
+		return new ParametricSurvival(Type.EXPONENTIAL, 1, scale, logLikelihood(counts, 1, scale, deaths, sumLogDeaths), counts.getTotal());
+	}
+
+	/**
+	 * Weibull MLE: Newton iterations on the profile equation of the shape, kept inside a bisection bracket,
+	 * then the scale of the shape.
+	 *
+	 * @return the model, or null when there are no deaths.
+	 */
+	public static ParametricSurvival fitWeibull(SurvivalCounts counts) {
+
+		int deaths = 0;
+		double sumLogDeaths = 0;
+		double maxTime = MIN_TIME;
+		for (int i = 0; i < counts.size(); i++) {
+			double t = time(counts.getTime(i));
+			deaths += counts.getDeaths(i);
+			sumLogDeaths += counts.getDeaths(i) * Math.log(t);
+			maxTime = Math.max(maxTime, t);
+		}
+		if (deaths == 0) {
+			return null;
+		}
+
+		// times relative to the max time, so t^shape does not overflow; the shape does not depend on the unit
+		double meanLogDeaths = sumLogDeaths / deaths - Math.log(maxTime);
+
+		double low = 1e-3;
+		double high = 1e3;
+		double shape = 1;
+		for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+			// g(k) = sum(t^k ln t) / sum(t^k) - 1 / k - mean(ln t of deaths), increasing in k
+			double s0 = 0;
+			double s1 = 0;
+			double s2 = 0;
+			for (int i = 0; i < counts.size(); i++) {
+				int cases = counts.getDeaths(i) + counts.getCensored(i);
+				double logT = Math.log(time(counts.getTime(i)) / maxTime);
+				double tk = cases * Math.exp(shape * logT);
+				s0 += tk;
+				s1 += tk * logT;
+				s2 += tk * logT * logT;
+			}
+			double g = s1 / s0 - 1 / shape - meanLogDeaths;
+			if (Math.abs(g) < TOLERANCE) {
+				break;
+			}
+			if (g > 0) {
+				high = shape;
+			} else {
+				low = shape;
+			}
+			double derivative = (s2 / s0) - (s1 / s0) * (s1 / s0) + 1 / (shape * shape);
+			double next = shape - g / derivative;
+			if (!(next > low && next < high)) {
+				next = (low + high) / 2;
+			}
+			if (Math.abs(next - shape) < TOLERANCE * shape) {
+				shape = next;
+				break;
+			}
+			shape = next;
+		}
+
+		double sum = 0;
+		for (int i = 0; i < counts.size(); i++) {
+			int cases = counts.getDeaths(i) + counts.getCensored(i);
+			sum += cases * Math.exp(shape * Math.log(time(counts.getTime(i)) / maxTime));
+		}
+		double scale = maxTime * Math.pow(sum / deaths, 1 / shape);
+		return new ParametricSurvival(Type.WEIBULL, shape, scale, logLikelihood(counts, shape, scale, deaths, sumLogDeaths), counts.getTotal());
+	}
+
+	private static double logLikelihood(SurvivalCounts counts, double shape, double scale, int deaths, double sumLogDeaths) {
+		// deaths contribute log f(t), censored log S(t)
+		double cumulativeHazard = 0;
+		for (int i = 0; i < counts.size(); i++) {
+			int cases = counts.getDeaths(i) + counts.getCensored(i);
+			cumulativeHazard += cases * Math.pow(time(counts.getTime(i)) / scale, shape);
+		}
+		return deaths * (Math.log(shape) - shape * Math.log(scale)) + (shape - 1) * sumLogDeaths - cumulativeHazard;
+	}
+
+	private static double time(int time) {
+		return Math.max(time, MIN_TIME);
+	}
+
+	/**
+	 * @return survival at the time, in minutes.
+	 */
+	public double getSurvival(double time) {
+		if (time <= 0) {
+			return 1;
+		}
+		return Math.exp(-Math.pow(time / scale, shape));
+	}
+
+	/**
+	 * @return minutes until the survival falls to the confidence.
+	 */
+	public double getQuantile(double confidence) {
+		if (confidence >= 1) {
+			return 0;
+		}
+		if (confidence <= 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return scale * Math.pow(-Math.log(confidence), 1 / shape);
+	}
+
+	/**
+	 * @return whole minutes until the survival falls to the confidence, as {@link SurvivalFunction#getTime(double)}.
+	 */
+	public int getTime(double confidence) {
+		return (int) Math.min(Integer.MAX_VALUE, Math.floor(getQuantile(confidence)));
+	}
+
+	/**
+	 * Goodness of fit: largest difference between the survival of the model and of the Kaplan-Meier curve,
+	 * after the deaths of each interval end.
+	 */
+	public double distanceTo(SurvivalFunction curve) {
+		double max = 0;
+		for (int i = 1; i < curve.size(); i++) {
+			max = Math.max(max, Math.abs(getSurvival(curve.getStart(i)) - curve.getCumulativeSurvival(i)));
+		}
+		return max;
+	}
+
+	/**
+	 * @return Akaike information criterion, lower is better.
+	 */
+	public double getAic() {
+		return 2 * type.getParameters() - 2 * logLikelihood;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public double getShape() {
+		return shape;
+	}
+
+	public double getScale() {
+		return scale;
+	}
+
+	public double getLogLikelihood() {
+		return logLikelihood;
+	}
+
+	public int getCaseCount() {
+		return caseCount;
+	}
+
+	/**
+	 * @return distance to the Kaplan-Meier curve measured by {@link #fit(Type, SurvivalCounts)}, or NaN.
+	 */
+	public double getDistance() {
+		return distance;
+	}
+
+	@Override
+	public String toString() {
+		return type +" shape: "+ shape +", scale: "+ scale +", log likelihood: "+ logLikelihood +", distance: "+ distance;
+	}
+
+}
@@ -0,0 +1,240 @@
+package core.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import core.executor.cbr.Case;
+import core.util.KaplanMeierEstimator.Interval;
+
+/**
+ * Kaplan-Meier estimator backed by parallel primitive arrays.
+ * <p>
+ * Produces the same curve as {@link KaplanMeierEstimator#compute(int[], boolean[])}, but the intervals are kept
+ * in arrays (start, end, deaths, censored and survival in double precision) that are reused between calls.
+ * Keep one instance per thread and call {@link #compute(int[], boolean[], int)} as many times as needed;
+ * {@link Interval} objects are only created by {@link #toIntervals()}.
+ *
+ * @author Pergentino
+ */
+public class PrimitiveKaplanMeierEstimator {
+
+	private static final int DEFAULT_CAPACITY = 64;
+
+	private int[] start;
+	private int[] end;
+	private int[] died;
+	private int[] censored;
+	private double[] survival;
+	private int size;
+
+	// input buffers used by compute(List<Case>) and to sort unsorted input
+	private int[] timeBuffer = new int[0];
+	private boolean[] censuredBuffer = new boolean[0];
+
+	public PrimitiveKaplanMeierEstimator() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public PrimitiveKaplanMeierEstimator(int initialCapacity) {
+		if (initialCapacity < 1) {
+			throw new IllegalArgumentException("Illegal Capacity: " + initialCapacity);
+		}
+		start = new int[initialCapacity];
+		end = new int[initialCapacity];
+		died = new int[initialCapacity];
+		censored = new int[initialCapacity];
+		survival = new double[initialCapacity];
+	}
+
+	/**
+	 * Computes the curve of all elements of the arrays.
+	 * @see #compute(int[], boolean[], int)
+	 */
+	public PrimitiveKaplanMeierEstimator compute(int[] time, boolean[] censured) {
+		if (time.length != censured.length) {
+			throw new RuntimeException("Time and censured sizes are different.");
+		}
+		return compute(time, censured, time.length);
+	}
+
+	/**
+	 * Computes the curve of the first <code>length</code> elements of the arrays, replacing the previous one.
+	 *
+	 * @param time     times in any order, unsorted times are copied to the input buffers and sorted in linear time
+	 *                 by {@link MinuteSort}; the arrays are not changed
+	 * @param censured array of boolean values indicating if the event is a failure or censure
+	 * @param length   number of elements to use from both arrays
+	 * @return this estimator
+	 * @throws NoSuchElementException when no time is greater than zero, as {@link KaplanMeierEstimator}
+	 */
+	public PrimitiveKaplanMeierEstimator compute(int[] time, boolean[] censured, int length) {
+
+		if (length > time.length || length > censured.length) {
+			throw new RuntimeException("Length is greater than time or censured sizes.");
+		}
+		if (length < 2) {
+			throw new RuntimeException("Time lenght is too small.");
+		}
+		if (!MinuteSort.isSorted(time, length)) {
+			if (time != timeBuffer) {
+				ensureBufferCapacity(length);
+				System.arraycopy(time, 0, timeBuffer, 0, length);
+				System.arraycopy(censured, 0, censuredBuffer, 0, length);
+				time = timeBuffer;
+				censured = censuredBuffer;
+			}
+			MinuteSort.sort(time, censured, length);
+		}
+
+		size = 0;
+
+		// Intervals end at each distinct failure time. Events up to the end of the last closed interval belong
+		// to it, events after it are pending until the next failure (or the last time) closes a new interval.
+		int startTime = 0;
+		int pendingDied = 0;
+		int pendingCensored = 0;
+
+		for (int i = 0; i < length; i++) {
+
+			int t = time[i];
+
+			if (size > 0 && t <= startTime) {
+				if (censured[i]) {
+					censored[size - 1]++;
+				} else {
+					died[size - 1]++;
+				}
+			} else if (censured[i]) {
+				pendingCensored++;
+			} else if (t > startTime) {
+				addInterval(startTime, t, pendingDied + 1, pendingCensored);
+				startTime = t;
+				pendingDied = 0;
+				pendingCensored = 0;
+			} else {
+				pendingDied++;
+			}
+		}
+
+		int lastTime = time[length - 1];
+		if (lastTime > startTime) {
+			addInterval(startTime, lastTime, pendingDied, pendingCensored);
+		}
+		if (size == 0) {
+			// as KaplanMeierEstimator, which has no interval to start the curve
+			throw new NoSuchElementException("No time greater than zero.");
+		}
+
+		// Initially everyone is at risk, and the cumulative survival is 1.
+		// Each interval holds the survival at its start.
+		double atRisk = length;
+		double cumulativeSurvival = 1;
+		for (int i = 0; i < size; i++) {
+			survival[i] = cumulativeSurvival;
+			atRisk -= censored[i];
+			cumulativeSurvival *= (atRisk - died[i]) / atRisk;
+			atRisk -= died[i];
+		}
+
+		return this;
+	}
+
+	/**
+	 * Computes the curve from {@link Case} timeToRevocation and censored attributes, reusing internal input buffers.
+	 *
+	 * @param caseList cases in any order, as returned by the DAO, sorted in the buffers when needed.
+	 * @return this estimator
+	 */
+	public PrimitiveKaplanMeierEstimator compute(List<Case> caseList) {
+
+		ensureBufferCapacity(caseList.size());
+
+		int cont = 0;
+		for (Case obj : caseList) {
+			timeBuffer[cont] = obj.getTimeToRevocation();
+			censuredBuffer[cont] = obj.isCensored();
+			cont++;
+		}
+
+		return compute(timeBuffer, censuredBuffer, cont);
+	}
+
+	private void ensureBufferCapacity(int length) {
+		if (timeBuffer.length < length) {
+			timeBuffer = new int[length];
+			censuredBuffer = new boolean[length];
+		}
+	}
+
+	private void addInterval(int startTime, int endTime, int numberDied, int numberCensured) {
+		if (size == end.length) {
+			grow();
+		}
+		start[size] = startTime;
+		end[size] = endTime;
+		died[size] = numberDied;
+		censored[size] = numberCensured;
+		size++;
+	}
+
+	private void grow() {
+		int newCapacity = end.length * 2;
+		start = copyOf(start, newCapacity);
+		end = copyOf(end, newCapacity);
+		died = copyOf(died, newCapacity);
+		censored = copyOf(censored, newCapacity);
+		double[] tmp = new double[newCapacity];
+		System.arraycopy(survival, 0, tmp, 0, size);
+		survival = tmp;
+	}
+
+	private int[] copyOf(int[] elements, int newCapacity) {
+		int[] tmp = new int[newCapacity];
+		System.arraycopy(elements, 0, tmp, 0, size);
+		return tmp;
+	}
+
+	/**
+	 * Materializes the curve as the list returned by {@link KaplanMeierEstimator#compute(int[], boolean[])}.
+	 * Censored times are not kept, only their count.
+	 */
+	public List<Interval> toIntervals() {
+		List<Interval> intervals = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			intervals.add(new Interval(start[i], end[i], died[i], censored[i], (float) survival[i]));
+		}
+		return intervals;
+	}
+
+	/**
+	 * @return number of intervals of the last computed curve.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int getStart(int index) {
+		return start[index];
+	}
+
+	public int getEnd(int index) {
+		return end[index];
+	}
+
+	public int getNumberDied(int index) {
+		return died[index];
+	}
+
+	public int getNumberCensured(int index) {
+		return censored[index];
+	}
+
+	/**
+	 * @return cumulative survival at the start of the interval.
+	 */
+	public double getCumulativeSurvival(int index) {
+		return survival[index];
+	}
+
+}
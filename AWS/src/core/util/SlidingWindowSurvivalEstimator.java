@@ -0,0 +1,133 @@
+package core.util;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import core.executor.cbr.Case;
+
+/**
+ * Kaplan-Meier curve of the cases of one bucket that started in the last N milliseconds (usually weeks) before
+ * the end of the window.
+ * <p>
+ * Cases wait in a heap by init time until the window reaches them and leave it from another heap by init time,
+ * so each case costs O(log n) over its life. The curve is kept by an {@link OnlineKaplanMeierEstimator}. A backtest can move
+ * the window week by week with {@link #advanceTo(long)} instead of computing the curve of each week from the cases.
+ * Cases keep their saved outcome, the window only selects them by init time.
+ */
+public class SlidingWindowSurvivalEstimator {
+
+	private static final Comparator<Case> BY_INIT_TIME = Comparator.comparingLong(Case::getInitTime);
+
+	private final long windowMillis;
+
+	private final PriorityQueue<Case> pending = new PriorityQueue<>(BY_INIT_TIME);
+	// cases in the window, by init time
+	private final PriorityQueue<Case> window = new PriorityQueue<>(BY_INIT_TIME);
+	private final OnlineKaplanMeierEstimator estimator = new OnlineKaplanMeierEstimator();
+
+	private long windowEnd = Long.MIN_VALUE;
+
+	public SlidingWindowSurvivalEstimator(long windowMillis) {
+		if (windowMillis < 1) {
+			throw new IllegalArgumentException("Window must be positive.");
+		}
+		this.windowMillis = windowMillis;
+	}
+
+	public static SlidingWindowSurvivalEstimator ofWeeks(int weeks) {
+		return new SlidingWindowSurvivalEstimator(TimeUnit.DAYS.toMillis(7L * weeks));
+	}
+
+	/**
+	 * Adds a case, counted once the window reaches its init time. Cases older than the window are ignored.
+	 * Cases must not change after added.
+	 */
+	public synchronized void add(Case c) {
+		if (windowEnd == Long.MIN_VALUE || c.getInitTime() >= windowEnd) {
+			pending.add(c);
+		} else if (c.getInitTime() >= windowEnd - windowMillis) {
+			enter(c);
+		}
+	}
+
+	public synchronized void addAll(Collection<Case> cases) {
+		for (Case c : cases) {
+			add(c);
+		}
+	}
+
+	/**
+	 * Moves the window to the cases with init time from time - window (inclusive) to time (exclusive).
+	 * The window only moves forward.
+	 */
+	public synchronized void advanceTo(long time) {
+		if (time < windowEnd) {
+			throw new IllegalArgumentException("Window can not go back from "+ windowEnd +" to "+ time +".");
+		}
+		windowEnd = time;
+		long windowStart = time - windowMillis;
+
+		while (!pending.isEmpty() && pending.peek().getInitTime() < time) {
+			Case c = pending.poll();
+			if (c.getInitTime() >= windowStart) {
+				enter(c);
+			}
+		}
+		while (!window.isEmpty() && window.peek().getInitTime() < windowStart) {
+			Case c = window.poll();
+			estimator.remove(c.getTimeToRevocation(), c.isCensored());
+		}
+	}
+
+	private void enter(Case c) {
+		window.add(c);
+		estimator.add(c.getTimeToRevocation(), c.isCensored());
+	}
+
+	public synchronized long getWindowEnd() {
+		return windowEnd;
+	}
+
+	public long getWindowMillis() {
+		return windowMillis;
+	}
+
+	/**
+	 * @return number of cases in the window.
+	 */
+	public synchronized int size() {
+		return window.size();
+	}
+
+	/**
+	 * @return number of cases waiting for the window.
+	 */
+	public synchronized int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * @return curve of the cases in the window, or null when it can not be computed.
+	 * @see OnlineKaplanMeierEstimator#getFunction()
+	 */
+	public synchronized SurvivalFunction getFunction() {
+		return estimator.getFunction();
+	}
+
+	/**
+	 * @see OnlineKaplanMeierEstimator#getTime(double)
+	 */
+	public synchronized int getTime(double confidence) {
+		return estimator.getTime(confidence);
+	}
+
+	/**
+	 * @see OnlineKaplanMeierEstimator#getSurvival(int)
+	 */
+	public synchronized float getSurvival(int time) {
+		return estimator.getSurvival(time);
+	}
+
+}
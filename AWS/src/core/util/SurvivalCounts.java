@@ -0,0 +1,211 @@
+package core.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Sufficient statistics of a Kaplan-Meier curve: the distinct times, in ascending order, with the number of
+ * deaths and censored cases at each one.
+ * <p>
+ * The curve of {@link KaplanMeierEstimator} only depends on these counts, so cases of several buckets (zones, regions,
+ * neighbor hours, instance families) can be pooled by merging their counts in linear time, without reading or
+ * sorting the cases again. Instances are immutable.
+ */
+public class SurvivalCounts {
+
+	public static final SurvivalCounts EMPTY = new SurvivalCounts(new int[0], new int[0], new int[0], 0);
+
+	private final int[] times;
+	private final int[] deaths;
+	private final int[] censored;
+	private final int size;
+
+	private SurvivalCounts(int[] times, int[] deaths, int[] censored, int size) {
+		this.times = times;
+		this.deaths = deaths;
+		this.censored = censored;
+		this.size = size;
+	}
+
+	/**
+	 * @param time     times in any order, copies of unsorted arrays are sorted in linear time by {@link MinuteSort}
+	 * @param censured array of boolean values indicating if the event is a failure or censure
+	 */
+	public static SurvivalCounts of(int[] time, boolean[] censured) {
+		if (time.length != censured.length) {
+			throw new IllegalArgumentException("Time and censured sizes are different.");
+		}
+		if (!MinuteSort.isSorted(time)) {
+			time = time.clone();
+			censured = censured.clone();
+			MinuteSort.sort(time, censured);
+		}
+
+		int[] times = new int[time.length];
+		int[] deaths = new int[time.length];
+		int[] censored = new int[time.length];
+		int size = 0;
+
+		for (int i = 0; i < time.length; i++) {
+			if (size == 0 || time[i] > times[size - 1]) {
+				times[size++] = time[i];
+			}
+			if (censured[i]) {
+				censored[size - 1]++;
+			} else {
+				deaths[size - 1]++;
+			}
+		}
+
+		return new SurvivalCounts(times, deaths, censored, size);
+	}
+
+	/**
+	 * @param times    distinct times in ascending order
+	 * @param deaths   deaths at each time
+	 * @param censored censored cases at each time
+	 */
+	public static SurvivalCounts of(int[] times, int[] deaths, int[] censored) {
+		if (times.length != deaths.length || times.length != censored.length) {
+			throw new IllegalArgumentException("Times, deaths and censored sizes are different.");
+		}
+		for (int i = 1; i < times.length; i++) {
+			if (times[i] <= times[i - 1]) {
+				throw new IllegalArgumentException("Times are not distinct and in ascending order.");
+			}
+		}
+		return new SurvivalCounts(times.clone(), deaths.clone(), censored.clone(), times.length);
+	}
+
+	/**
+	 * @return the counts of both, merged in linear time.
+	 */
+	public SurvivalCounts merge(SurvivalCounts other) {
+		if (other.size == 0) {
+			return this;
+		}
+		if (size == 0) {
+			return other;
+		}
+
+		int capacity = size + other.size;
+		int[] mergedTimes = new int[capacity];
+		int[] mergedDeaths = new int[capacity];
+		int[] mergedCensored = new int[capacity];
+		int n = 0;
+
+		int i = 0;
+		int j = 0;
+		while (i < size || j < other.size) {
+			if (j == other.size || (i < size && times[i] < other.times[j])) {
+				mergedTimes[n] = times[i];
+				mergedDeaths[n] = deaths[i];
+				mergedCensored[n] = censored[i];
+				i++;
+			} else if (i == size || other.times[j] < times[i]) {
+				mergedTimes[n] = other.times[j];
+				mergedDeaths[n] = other.deaths[j];
+				mergedCensored[n] = other.censored[j];
+				j++;
+			} else {
+				mergedTimes[n] = times[i];
+				mergedDeaths[n] = deaths[i] + other.deaths[j];
+				mergedCensored[n] = censored[i] + other.censored[j];
+				i++;
+				j++;
+			}
+			n++;
+		}
+
+		return new SurvivalCounts(mergedTimes, mergedDeaths, mergedCensored, n);
+	}
+
+	/**
+	 * Merges all counts in pairs, so each count is merged O(log k) times.
+	 */
+	public static SurvivalCounts mergeAll(Collection<SurvivalCounts> counts) {
+		List<SurvivalCounts> round = new ArrayList<>(counts);
+		if (round.isEmpty()) {
+			return EMPTY;
+		}
+		while (round.size() > 1) {
+			List<SurvivalCounts> next = new ArrayList<>((round.size() + 1) / 2);
+			for (int i = 0; i < round.size(); i += 2) {
+				next.add(i + 1 < round.size() ? round.get(i).merge(round.get(i + 1)) : round.get(i));
+			}
+			round = next;
+		}
+		return round.get(0);
+	}
+
+	/**
+	 * @return number of distinct times.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int getTime(int index) {
+		return times[index];
+	}
+
+	public int getDeaths(int index) {
+		return deaths[index];
+	}
+
+	public int getCensored(int index) {
+		return censored[index];
+	}
+
+	/**
+	 * @return number of cases.
+	 */
+	public int getTotal() {
+		int total = 0;
+		for (int i = 0; i < size; i++) {
+			total += deaths[i] + censored[i];
+		}
+		return total;
+	}
+
+	/**
+	 * @return times of all cases in ascending order, to be used with {@link #toCensoredArray()}.
+	 */
+	public int[] toTimeArray() {
+		int[] time = new int[getTotal()];
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			Arrays.fill(time, n, n + deaths[i] + censored[i], times[i]);
+			n += deaths[i] + censored[i];
+		}
+		return time;
+	}
+
+	/**
+	 * @return censored flags of all cases, deaths first at each time.
+	 */
+	public boolean[] toCensoredArray() {
+		boolean[] censured = new boolean[getTotal()];
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			n += deaths[i];
+			Arrays.fill(censured, n, n + censored[i], true);
+			n += censored[i];
+		}
+		return censured;
+	}
+
+	/**
+	 * @return the Kaplan-Meier curve of the cases.
+	 */
+	public SurvivalFunction toSurvivalFunction() {
+		return SurvivalFunction.compute(this);
+	}
+
+}
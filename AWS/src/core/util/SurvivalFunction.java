@@ -0,0 +1,214 @@
+package core.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import core.util.KaplanMeierEstimator.Interval;
+
+/**
+ * Immutable Kaplan-Meier curve with binary search queries.
+ * <p>
+ * The curve is read as the experiments read the intervals of {@link KaplanMeierEstimator#compute(int[], boolean[])}:
+ * the survival at a time is the cumulative survival of the first interval ending at or after it, so deaths at the
+ * end of an interval only count after that time. The minutes until failure at a confidence level is the end of the
+ * last interval whose cumulative survival is at least the confidence, or the end of the first interval when none is.
+ * <p>
+ * The Greenwood sum of each interval is kept, so the confidence bands are computed without the cases. Queries by the
+ * lower bound of the 95% band read the intervals while the bound stays at least the confidence (the bound is not
+ * monotone as the survival is).
+ */
+public class SurvivalFunction {
+
+	private final int[] start;
+	private final int[] end;
+	private final int[] died;
+	private final int[] censored;
+	private final float[] survival;
+	private final double[] greenwood;
+	// running minimum of the lower bounds of the 95% band
+	private final float[] lowerBound;
+
+	public SurvivalFunction(List<Interval> intervals) {
+		if (intervals.isEmpty()) {
+			throw new IllegalArgumentException("The curve has no intervals.");
+		}
+		int size = intervals.size();
+		start = new int[size];
+		end = new int[size];
+		died = new int[size];
+		censored = new int[size];
+		survival = new float[size];
+		greenwood = new double[size];
+		lowerBound = new float[size];
+
+		int i = 0;
+		for (Interval n : intervals) {
+			start[i] = n.getStart();
+			end[i] = n.getEnd();
+			died[i] = n.getNumberDied();
+			censored[i] = n.getNumberCensured();
+			survival[i] = n.getCumulativeSurvival();
+			greenwood[i] = n.getGreenwood();
+			lowerBound[i] = (float) n.getLowerBound();
+			if (i > 0 && (Float.isNaN(lowerBound[i - 1]) || lowerBound[i] > lowerBound[i - 1])) {
+				lowerBound[i] = lowerBound[i - 1];
+			}
+			i++;
+		}
+	}
+
+	/**
+	 * @see KaplanMeierEstimator#compute(int[], boolean[])
+	 */
+	public static SurvivalFunction compute(int[] time, boolean[] censured) {
+		return new SurvivalFunction(KaplanMeierEstimator.compute(time, censured));
+	}
+
+	/**
+	 * @see KaplanMeierEstimator#compute(SurvivalCounts)
+	 */
+	public static SurvivalFunction compute(SurvivalCounts counts) {
+		return new SurvivalFunction(KaplanMeierEstimator.compute(counts));
+	}
+
+	/**
+	 * @return survival at the given time, in minutes.
+	 */
+	public float getSurvival(int time) {
+		// first interval with end >= time
+		int low = 0;
+		int high = end.length - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (end[mid] < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return survival[low];
+	}
+
+	/**
+	 * @return minutes until failure at the confidence level: largest interval end with survival at least the confidence.
+	 */
+	public int getTime(double confidence) {
+		// survival does not increase, so intervals with survival >= confidence are a prefix (NaN stops it, as a linear walk)
+		int low = 0;
+		int high = survival.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (survival[mid] >= confidence) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return end[Math.max(low - 1, 0)];
+	}
+
+	/**
+	 * @return minutes until failure at the confidence level by the lower bound of the 95% band: largest interval end
+	 * with the lower bound of it and of all intervals before at least the confidence.
+	 */
+	public int getTimeAtLowerBound(double confidence) {
+		int low = 0;
+		int high = lowerBound.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (lowerBound[mid] >= confidence) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return end[Math.max(low - 1, 0)];
+	}
+
+	/**
+	 * @return minutes until failure of each confidence level.
+	 */
+	public int[] getTimes(double[] confidences) {
+		int[] times = new int[confidences.length];
+		for (int i = 0; i < confidences.length; i++) {
+			times[i] = getTime(confidences[i]);
+		}
+		return times;
+	}
+
+	/**
+	 * @return the curve as returned by {@link KaplanMeierEstimator#compute(int[], boolean[])}. Censored times are not kept, only their count.
+	 */
+	public List<Interval> toIntervals() {
+		List<Interval> intervals = new ArrayList<>(end.length);
+		for (int i = 0; i < end.length; i++) {
+			intervals.add(new Interval(start[i], end[i], died[i], censored[i], survival[i], greenwood[i]));
+		}
+		return intervals;
+	}
+
+	/**
+	 * @return number of intervals.
+	 */
+	public int size() {
+		return end.length;
+	}
+
+	public int getStart(int index) {
+		return start[index];
+	}
+
+	public int getEnd(int index) {
+		return end[index];
+	}
+
+	public int getNumberDied(int index) {
+		return died[index];
+	}
+
+	public int getNumberCensured(int index) {
+		return censored[index];
+	}
+
+	/**
+	 * @return cumulative survival at the start of the interval.
+	 */
+	public float getCumulativeSurvival(int index) {
+		return survival[index];
+	}
+
+	public double getGreenwood(int index) {
+		return greenwood[index];
+	}
+
+	/**
+	 * @return Greenwood variance of the cumulative survival of the interval.
+	 */
+	public double getVariance(int index) {
+		return (double) survival[index] * survival[index] * greenwood[index];
+	}
+
+	/**
+	 * @param z standard normal quantile of the confidence, as {@link KaplanMeierEstimator#Z_95}
+	 * @return lower bound of the log-log confidence band of the cumulative survival of the interval.
+	 */
+	public double getLowerBound(int index, double z) {
+		return KaplanMeierEstimator.lowerBound(survival[index], greenwood[index], z);
+	}
+
+	/**
+	 * @param z standard normal quantile of the confidence, as {@link KaplanMeierEstimator#Z_95}
+	 * @return upper bound of the log-log confidence band of the cumulative survival of the interval.
+	 */
+	public double getUpperBound(int index, double z) {
+		return KaplanMeierEstimator.upperBound(survival[index], greenwood[index], z);
+	}
+
+	/**
+	 * @return approximate memory used by the curve.
+	 */
+	public long getEstimatedBytes() {
+		return 7 * 16 + end.length * (4 * 4 + 4 + 8 + 4);
+	}
+
+}
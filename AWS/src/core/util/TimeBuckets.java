@@ -0,0 +1,166 @@
+package core.util;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Day of week, hour of day and minutes between times of epoch millis, the same of {@link java.util.Calendar} and
+ * joda Minutes, with long arithmetic and no allocation, to be used in the loops over price records.
+ * <p>
+ * In UTC the fields are plain divisions. Other zones add the offset of the time, searched in a table of the offset
+ * transitions of the zone built once (up to {@link #LAST_TABLE_YEAR}; later times keep the last offset).
+ * Days of week go from 1 (Sunday) to 7, as {@link java.util.Calendar#DAY_OF_WEEK}.
+ */
+public final class TimeBuckets {
+
+	public static final long MINUTE = 60 * 1000L;
+	public static final long HOUR = 60 * MINUTE;
+	public static final long DAY = 24 * HOUR;
+
+	public static final int LAST_TABLE_YEAR = 2100;
+
+	public static final TimeBuckets UTC = new TimeBuckets("UTC", new long[0], new int[] {0});
+
+	private static final ConcurrentMap<String, TimeBuckets> zones = new ConcurrentHashMap<>();
+
+	private final String zoneId;
+	// offsets[k] is used from transitions[k - 1] (inclusive) to transitions[k]
+	private final long[] transitions;
+	private final int[] offsets;
+
+	private TimeBuckets(String zoneId, long[] transitions, int[] offsets) {
+		this.zoneId = zoneId;
+		this.transitions = transitions;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * @return buckets of the default zone, the zone of {@link java.util.Calendar#getInstance()}.
+	 */
+	public static TimeBuckets ofDefault() {
+		return of(TimeZone.getDefault());
+	}
+
+	public static TimeBuckets of(TimeZone zone) {
+		String id = zone.getID();
+		if (UTC.zoneId.equals(id)) {
+			return UTC;
+		}
+		return zones.computeIfAbsent(id, k -> build(zone.toZoneId()));
+	}
+
+	private static TimeBuckets build(ZoneId zone) {
+
+		ZoneRules rules = zone.getRules();
+		if (rules.isFixedOffset()) {
+			int offset = rules.getOffset(Instant.EPOCH).getTotalSeconds() * 1000;
+			return offset == 0 ? new TimeBuckets(zone.getId(), UTC.transitions, UTC.offsets) : new TimeBuckets(zone.getId(), new long[0], new int[] {offset});
+		}
+
+		long limit = Instant.parse(LAST_TABLE_YEAR +"-01-01T00:00:00Z").toEpochMilli();
+		long[] transitions = new long[64];
+		int[] offsets = new int[65];
+		int size = 0;
+
+		ZoneOffsetTransition transition = rules.nextTransition(Instant.ofEpochMilli(Long.MIN_VALUE / 2));
+		offsets[0] = toMillis(transition != null ? transition.getOffsetBefore() : rules.getOffset(Instant.EPOCH));
+		while (transition != null && transition.toEpochSecond() * 1000 < limit) {
+			if (size == transitions.length) {
+				transitions = Arrays.copyOf(transitions, size * 2);
+				offsets = Arrays.copyOf(offsets, size * 2 + 1);
+			}
+			transitions[size] = transition.toEpochSecond() * 1000;
+			offsets[++size] = toMillis(transition.getOffsetAfter());
+			transition = rules.nextTransition(transition.getInstant());
+		}
+
+		return new TimeBuckets(zone.getId(), Arrays.copyOf(transitions, size), Arrays.copyOf(offsets, size + 1));
+	}
+
+	private static int toMillis(ZoneOffset offset) {
+		return offset.getTotalSeconds() * 1000;
+	}
+
+	/**
+	 * @return offset of the zone at the time, in millis.
+	 */
+	public int getOffset(long time) {
+		if (transitions.length == 0) {
+			return offsets[0];
+		}
+		// first transition after the time
+		int low = 0;
+		int high = transitions.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (transitions[mid] <= time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return offsets[low];
+	}
+
+	/**
+	 * @return the time as millis since the epoch in the local time of the zone.
+	 */
+	public long toLocal(long time) {
+		return time + getOffset(time);
+	}
+
+	/**
+	 * @return day of week, from 1 (Sunday) to 7.
+	 */
+	public int dayOfWeek(long time) {
+		// 1970-01-01 was a Thursday
+		return (int) Math.floorMod(Math.floorDiv(toLocal(time), DAY) + 4, 7L) + 1;
+	}
+
+	/**
+	 * @return hour of day, from 0 to 23.
+	 */
+	public int hourOfDay(long time) {
+		return (int) Math.floorMod(Math.floorDiv(toLocal(time), HOUR), 24L);
+	}
+
+	/**
+	 * @return hours since the epoch in the local time of the zone.
+	 */
+	public long epochHour(long time) {
+		return Math.floorDiv(toLocal(time), HOUR);
+	}
+
+	/**
+	 * @return bucket of the time, (day of week - 1) * 24 + hour of day, from 0 to 167.
+	 */
+	public int bucket(long time) {
+		long hour = epochHour(time);
+		// 1970-01-01 was a Thursday, day of week 5
+		return (int) Math.floorMod(hour + 4 * 24, 7 * 24L);
+	}
+
+	/**
+	 * Whole minutes from a time to another, truncated as joda Minutes.minutesBetween.
+	 */
+	public static int minutesBetween(long from, long to) {
+		return Math.toIntExact((to - from) / MINUTE);
+	}
+
+	public String getZoneId() {
+		return zoneId;
+	}
+
+	@Override
+	public String toString() {
+		return "TimeBuckets of "+ zoneId +" with "+ transitions.length +" transitions";
+	}
+
+}
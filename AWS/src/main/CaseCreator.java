@@ -53,6 +53,13 @@ public class CaseCreator {
 			// do nothing
 		}
 		
+		// incremental runs only generate the cases after the watermark of each series, saved as a delta into database
+		boolean incremental = args.length > 2 && Boolean.valueOf(args[2]);
+		if (incremental) {
+			saveToDatabase = true;
+			log.info("Incremental generation from the watermark of each series.");
+		}
+		
 		CASES_FOLDER = CASES_FOLDER + File.separatorChar +"aws_1";
 		
 		int folderCount = 0;
@@ -119,7 +126,13 @@ public class CaseCreator {
 						Date d1 = DateUtil.getInitDate("2017/01/01");
 						Date d2 = DateUtil.getEndOfDate("2017/08/31");
 						
-						AWSCBRCreator creator = new AWSCBRCreator(region, z.getZoneName(), instance, d1, d2, fileToSave, saveToDatabase);
+						AWSCBRCreator creator;
+						if (incremental) {
+							creator = new AWSCBRCreator(region, z.getZoneName(), instance, fileToSave, saveToDatabase);
+							creator.incremental = true;
+						} else {
+							creator = new AWSCBRCreator(region, z.getZoneName(), instance, d1, d2, fileToSave, saveToDatabase);
+						}
 						creator.setName(z.getZoneName() +"@"+ instance);
 						
 						executor.execute(creator);
@@ -154,8 +167,13 @@ public class CaseCreator {
         Date end = Calendar.getInstance().getTime();
         log.info("################## Done in "+ Minutes.minutesBetween(new DateTime(init.getTime()), new DateTime(end.getTime())).getMinutes() +" minutes.");
         
-        log.info("Importing files to DB");
-        PostgresDBConnection.getInstance().copyFromCSV(SpotDAO.TB_CASES, Paths.get(CASES_FOLDER).toFile().listFiles());
+        if (!incremental) {
+        	log.info("Importing files to DB");
+        	PostgresDBConnection.getInstance().copyFromCSV(SpotDAO.TB_CASES, Paths.get(CASES_FOLDER).toFile().listFiles());
+        	PostgresDBConnection.getInstance().refreshCasesSummary(SpotDAO.TB_CASES, SpotDAO.TB_CASES_SUMMARY);
+        	PostgresDBConnection.getInstance().refreshCasesWatermark(SpotDAO.TB_CASES, SpotDAO.TB_CASES_WATERMARK);
+        }
+        log.info(PostgresDBConnection.getInstance().getPool().getStatistics());
 		
 		
 		
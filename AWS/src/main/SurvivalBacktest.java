@@ -0,0 +1,290 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import cloud.aws.bean.CaseBuckets;
+import cloud.aws.bean.PriceMaxIndex;
+import cloud.aws.bean.PriceSeries;
+import cloud.aws.bean.SurvivalCube;
+import cloud.aws.util.SurvivalCubeCache;
+import core.util.TimeBuckets;
+
+/**
+ * In memory backtest of the survival experiments.
+ * <p>
+ * For each hour of the experiment period, the minutes to test are taken from the Kaplan-Meier curve of the cases
+ * with same day of week and hour of day (from the shared {@link SurvivalCubeCache}), a base price is defined from the previous prices, and the instance is
+ * revoked at the first price greater than the base price. The outcome of each hour is scored by a strategy.
+ * <p>
+ * Prices and cases of the series are loaded once by the caller, so a whole period runs without queries.
+ * The first price above the base price is found with a {@link PriceMaxIndex}.
+ */
+public class SurvivalBacktest {
+
+	private static final Logger log = LogManager.getLogger(SurvivalBacktest.class);
+
+	/**
+	 * Defines the base price (the bid) of an hour.
+	 */
+	public interface BasePriceStrategy {
+		float definePrice(PriceSeries series, long baseTime);
+	}
+
+	/**
+	 * Scores an hour where the price went above the base price. Hours without revocation always score 1.
+	 */
+	public interface ScoringStrategy {
+		double score(double durationInMinutes, int minutesToTest);
+	}
+
+	/**
+	 * Success only when the instance survived longer than the minutes to test (SurvivalExperiment04Thread).
+	 */
+	public static final ScoringStrategy BINARY = (durationInMinutes, minutesToTest) -> {
+		double probability = durationInMinutes / minutesToTest;
+		return probability > 1 ? 1.0 : 0;
+	};
+
+	/**
+	 * Fraction of the minutes to test the instance survived (SurvivalExperiment03Thread).
+	 */
+	public static final ScoringStrategy PROPORTIONAL = (durationInMinutes, minutesToTest) -> {
+		double probability = durationInMinutes / minutesToTest;
+		return probability > 1 ? 1.0 : probability;
+	};
+
+	/**
+	 * Mean of the prices in the N days before the base time.
+	 */
+	public static BasePriceStrategy meanOfPreviousDays(int days) {
+		return (series, baseTime) -> Double.valueOf(previousDays(series, baseTime, days).mean()).floatValue();
+	}
+
+	/**
+	 * Median of the prices in the N days before the base time.
+	 */
+	public static BasePriceStrategy medianOfPreviousDays(int days) {
+		return (series, baseTime) -> Double.valueOf(previousDays(series, baseTime, days).median()).floatValue();
+	}
+
+	private static PriceSeries previousDays(PriceSeries series, long baseTime, int days) {
+		Calendar previousDate = Calendar.getInstance();
+		previousDate.setTimeInMillis(baseTime);
+		previousDate.add(Calendar.DAY_OF_MONTH, days * -1);
+		return series.slice(previousDate.getTimeInMillis(), baseTime);
+	}
+
+	/**
+	 * Outcome of one simulated hour.
+	 */
+	public static class Outcome {
+
+		private final long baseTime;
+		private final int dayOfWeek;
+		private final int hourOfDay;
+		private final int minutesToTest;
+		private final float basePrice;
+		private final Long revocationTime;
+		private final double score;
+
+		Outcome(long baseTime, int dayOfWeek, int hourOfDay, int minutesToTest, float basePrice, Long revocationTime, double score) {
+			this.baseTime = baseTime;
+			this.dayOfWeek = dayOfWeek;
+			this.hourOfDay = hourOfDay;
+			this.minutesToTest = minutesToTest;
+			this.basePrice = basePrice;
+			this.revocationTime = revocationTime;
+			this.score = score;
+		}
+
+		public long getBaseTime() {
+			return baseTime;
+		}
+
+		public int getDayOfWeek() {
+			return dayOfWeek;
+		}
+
+		public int getHourOfDay() {
+			return hourOfDay;
+		}
+
+		public int getMinutesToTest() {
+			return minutesToTest;
+		}
+
+		public float getBasePrice() {
+			return basePrice;
+		}
+
+		/**
+		 * @return time of the first price above the base price, or null when it never happened.
+		 */
+		public Long getRevocationTime() {
+			return revocationTime;
+		}
+
+		public boolean isRevoked() {
+			return revocationTime != null;
+		}
+
+		public double getScore() {
+			return score;
+		}
+
+		public MatrixRow toMatrixRow() {
+			return new MatrixRow(score, minutesToTest);
+		}
+	}
+
+	private final PriceSeries series;
+	private final PriceMaxIndex maxIndex;
+	private final SurvivalCube cube;
+	private final double confidenceInterval;
+	private final BasePriceStrategy basePriceStrategy;
+	private final ScoringStrategy scoringStrategy;
+
+	private Integer minutesToTest;
+	private boolean useLowerBound = false;
+	private Integer dayOfWeek;
+	private Integer hourOfDay;
+
+	/**
+	 * Uses the cube of these cases from the shared {@link SurvivalCubeCache}, computed once per instance of the cases.
+	 */
+	public SurvivalBacktest(PriceSeries series, CaseBuckets cases, double confidenceInterval, BasePriceStrategy basePriceStrategy, ScoringStrategy scoringStrategy) {
+		this(series, SurvivalCubeCache.getInstance().get(cases), confidenceInterval, basePriceStrategy, scoringStrategy);
+	}
+
+	public SurvivalBacktest(PriceSeries series, SurvivalCube cube, double confidenceInterval, BasePriceStrategy basePriceStrategy, ScoringStrategy scoringStrategy) {
+		if (series == null || cube == null || basePriceStrategy == null || scoringStrategy == null) {
+			throw new IllegalArgumentException("Series, cube and strategies are required.");
+		}
+		this.series = series;
+		this.maxIndex = new PriceMaxIndex(series);
+		this.cube = cube;
+		this.confidenceInterval = confidenceInterval;
+		this.basePriceStrategy = basePriceStrategy;
+		this.scoringStrategy = scoringStrategy;
+	}
+
+	/**
+	 * Uses the given minutes instead of the ones from the confidence interval. Null to go back to the confidence interval.
+	 */
+	public void setMinutesToTest(Integer minutesToTest) {
+		this.minutesToTest = minutesToTest;
+	}
+
+	/**
+	 * Takes the minutes of each bucket from the lower bound of the 95% confidence band instead of the survival curve.
+	 */
+	public void setUseLowerBound(boolean useLowerBound) {
+		this.useLowerBound = useLowerBound;
+	}
+
+	/**
+	 * Simulates only the hours of one bucket. Both null to simulate all hours.
+	 */
+	public void setBucket(Integer dayOfWeek, Integer hourOfDay) {
+		if ((dayOfWeek == null) != (hourOfDay == null)) {
+			throw new IllegalArgumentException("Provide both day of week and hour of day, or none of them.");
+		}
+		this.dayOfWeek = dayOfWeek;
+		this.hourOfDay = hourOfDay;
+	}
+
+	/**
+	 * Simulates every hour from September to November of the current year, as the experiments.
+	 */
+	public List<Outcome> run() {
+		return run(Calendar.SEPTEMBER, Calendar.NOVEMBER);
+	}
+
+	/**
+	 * Simulates every hour from the first day of the first month to the end of the last month of the current year.
+	 * Hours of buckets without a Kaplan-Meier curve (less than two cases) are skipped.
+	 *
+	 * @return outcomes in chronological order.
+	 */
+	public List<Outcome> run(int firstMonth, int lastMonth) {
+
+		long start = System.currentTimeMillis();
+		List<Outcome> outcomes = new ArrayList<>();
+
+		Calendar calendar = Calendar.getInstance();
+		calendar.set(Calendar.MONTH, firstMonth);
+		calendar.set(Calendar.DAY_OF_MONTH, 1);
+		calendar.set(Calendar.HOUR_OF_DAY, 0);
+		calendar.set(Calendar.MINUTE, 0);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		long firstTime = calendar.getTimeInMillis();
+		calendar.set(Calendar.MONTH, lastMonth + 1);
+		long limitTime = calendar.getTimeInMillis();
+
+		// hours are exact millis, as Calendar.add of HOUR_OF_DAY
+		TimeBuckets timeBuckets = TimeBuckets.ofDefault();
+		for (long baseTime = firstTime; baseTime < limitTime; baseTime += TimeBuckets.HOUR) {
+
+			int localDayOfWeek = timeBuckets.dayOfWeek(baseTime);
+			int localHourOfDay = timeBuckets.hourOfDay(baseTime);
+
+			if (dayOfWeek == null || (dayOfWeek == localDayOfWeek && hourOfDay == localHourOfDay)) {
+				Outcome outcome = simulate(localDayOfWeek, localHourOfDay, baseTime);
+				if (outcome != null) {
+					outcomes.add(outcome);
+				}
+			}
+		}
+
+		log.debug("Backtest of "+ series +" with "+ outcomes.size() +" hours in "+ (System.currentTimeMillis() - start) +" ms.");
+		return outcomes;
+	}
+
+	private Outcome simulate(int dayOfWeek, int hourOfDay, long baseTime) {
+
+		Integer bucketMinutes = useLowerBound ? cube.getMinutesAtLowerBound(dayOfWeek, hourOfDay, confidenceInterval) 
+				: cube.getMinutes(dayOfWeek, hourOfDay, confidenceInterval);
+		if (bucketMinutes == null) {
+			return null;
+		}
+		int minutes = minutesToTest != null ? minutesToTest : bucketMinutes;
+
+		float basePrice = basePriceStrategy.definePrice(series, baseTime);
+
+		int i = maxIndex.indexOfFirstAboveSince(baseTime, basePrice);
+		if (i < series.size()) {
+			long revocationTime = series.getTime(i);
+			double durationInMinutes = TimeUnit.MILLISECONDS.toMinutes(revocationTime - baseTime);
+			return new Outcome(baseTime, dayOfWeek, hourOfDay, minutes, basePrice, revocationTime, scoringStrategy.score(durationInMinutes, minutes));
+		}
+
+		return new Outcome(baseTime, dayOfWeek, hourOfDay, minutes, basePrice, null, 1.0);
+	}
+
+	/**
+	 * Groups outcomes in the day of week x hour of day matrix used by the experiments.
+	 */
+	public static List<MatrixRow>[][] toMatrix(List<Outcome> outcomes) {
+
+		@SuppressWarnings("unchecked")
+		List<MatrixRow>[][] matrix = new ArrayList[CaseBuckets.DAYS][CaseBuckets.HOURS];
+		for (int i = 1; i < CaseBuckets.DAYS; i++) {
+			for (int j = 0; j < CaseBuckets.HOURS; j++) {
+				matrix[i][j] = new ArrayList<>();
+			}
+		}
+
+		for (Outcome outcome : outcomes) {
+			matrix[outcome.getDayOfWeek()][outcome.getHourOfDay()].add(outcome.toMatrixRow());
+		}
+		return matrix;
+	}
+
+}
@@ -1,14 +1,11 @@
 package main;
 
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
@@ -16,13 +13,10 @@ import org.apache.logging.log4j.Logger;
 
 import com.amazonaws.regions.Regions;
 
-import cloud.aws.bean.MySpotPrice;
+import cloud.aws.bean.CaseBuckets;
+import cloud.aws.bean.PriceSeries;
 import cloud.aws.dao.SpotDAO;
 import cloud.aws.util.AWSUtil;
-import core.executor.cbr.Case;
-import core.util.DateUtil;
-import core.util.KaplanMeierEstimator;
-import core.util.KaplanMeierEstimator.Interval;
 import core.util.Statistic;
 
 public class SurvivalExperiment01Thread implements Runnable {
@@ -89,127 +83,22 @@ public class SurvivalExperiment01Thread implements Runnable {
 		
 		SpotDAO dao = new SpotDAO();
 		
-		@SuppressWarnings("unchecked")
-		List<MatrixRow>[][] matrixMedian = new ArrayList[8][24];
-		@SuppressWarnings("unchecked")
-		List<MatrixRow>[][] matrixMean = new ArrayList[8][24];
-		
-		// Initializing matrix
-		for (int i = 1; i < 8; i++) {
-			for (int j = 0; j < 24; j++) {
-				matrixMedian[i][j] = new ArrayList<>();
-				matrixMean[i][j] = new ArrayList<>();
-			}
+		// all cases and prices of the series, all hours are simulated in memory
+		CaseBuckets cases;
+		PriceSeries priceSeries;
+		try {
+			cases = dao.findAllCases(REGION, ZONE, instance);
+			priceSeries = dao.findPriceSeries(REGION, ZONE, instance);
+		} finally {
+			dao.closeConnection();
 		}
 		
-		// Defining experiment date init
-		
-		Calendar baseTime = Calendar.getInstance();
-		baseTime.set(Calendar.MONTH, 8); // 0=January, ..., 8=September
-		baseTime.set(Calendar.DAY_OF_MONTH, 1); // day 1, 6th day of week
-		baseTime.set(Calendar.HOUR_OF_DAY, 0); // 0 hour
-		baseTime.set(Calendar.MINUTE, 0); // 0 minute
-		baseTime.set(Calendar.SECOND, 0); // 0 second
-		baseTime.set(Calendar.MILLISECOND, 0); // 0 second
-		
-		while (baseTime.get(Calendar.MONTH) <= 10) { // sep, oct, nov
-			
-//			log.info("Processing "+ instance +" on "+ baseTime.getTime());
-			
-			int dayOfWeek = baseTime.get(Calendar.DAY_OF_WEEK);
-			int hourOfDay = baseTime.get(Calendar.HOUR_OF_DAY);
-			log("-------------------------------------------------------");
-			log("GETTING SIMILAR CASES. DOW: "+ dayOfWeek +" and HOD: "+ hourOfDay);
-			log("-------------------------------------------------------");
-			
-			// Getting cases with same REGION, ZONE, INSTANCE, DAY and HOUR
-			List<Case> cases = dao.findCases(REGION, ZONE, instance, dayOfWeek, hourOfDay);
-			
-			// create a set of survivor time.
-			List<Interval> intervals = KaplanMeierEstimator.compute(cases);
-			log("Cases....: "+ cases.size());
-			log("Intervals: "+ intervals.size());
-			
-			// searching 'interval object' with confidence interval to find minutes until failure 
-			Interval base = intervals.get(0);
-			for (Interval n : intervals) {
-//				 log(n.getEnd() +" - "+ String.format("%f", n.getCumulativeSurvival()) +" "+ n.getNumberCensured() +"/"+ n.getNumberDied());
-				if (n.getCumulativeSurvival() >= confidenceInterval) {
-					base = n;
-				} else {
-					break;
-				}
-			}
-			int baseMinutesUntilFailure = base.getEnd();
-			log("Interval in "+ (confidenceInterval * 100) +"%: "+ baseMinutesUntilFailure +" minutes until failure.");
-			
-			log("-------------------------------------------------------");
-			log("DEFINING BASE PRICE");
-			log("-------------------------------------------------------");
-			
-			// getting a median of last N days
-			Calendar previousDateTemp = Calendar.getInstance();
-			previousDateTemp.setTimeInMillis(baseTime.getTimeInMillis());
-			previousDateTemp.add(Calendar.DAY_OF_MONTH, -1);
-			
-			List<MySpotPrice> changes = dao.findAll(REGION, ZONE, instance, previousDateTemp.getTime(), baseTime.getTime());
-			log("Price changes: "+ changes.size());
-			List<Double> priceList = changes.stream().map(x -> Double.valueOf(x.getSpotPrice())).collect(Collectors.toList());
-			
-			double min = priceList.stream().reduce(Double.MAX_VALUE, Double::min);
-			double max = priceList.stream().reduce(Double.MIN_VALUE, Double::max);
-			
-			double mean = Statistic.mean(priceList);
-			double median = Statistic.median(priceList);
-			double standardDeviation = Statistic.standardDeviation(priceList);
-			log("Min price......: "+ String.format("%f", min));
-			log("Max price......: "+ String.format("%f", max));
-			log("Mean price.....: "+ String.format("%f", mean));
-			log("Median price...: "+ String.format("%f", median));
-			log("Standard Dev...: "+ String.format("%f", standardDeviation));
-			
-			float basePrice = Double.valueOf(median).floatValue();
-			log("Base price....: "+ String.format("%f", basePrice));
-			
-			
-			log("-------------------------------------------------------");
-			log("GETTING EXPERIMENT 'UNKNOWN' DATA AFTER BASE TIME "+ DateUtil.getFormattedDateTime(baseTime.getTime()));
-			log("-------------------------------------------------------");
-			
-			Calendar infiniteDate = Calendar.getInstance();
-			infiniteDate.add(Calendar.YEAR, 10);
-			
-			List<MySpotPrice> changesAfterBaseTime = dao.findAll(REGION, ZONE, instance, baseTime.getTime(), infiniteDate.getTime());
-			log("Price changes.: "+ changesAfterBaseTime.size());
-			
-			Double actualProbability = null;
-			boolean died = false;
-			for(MySpotPrice sp : changesAfterBaseTime) {
-				
-				if (sp.getSpotPriceFloat() > basePrice) {
-					log("Started at.: "+ DateUtil.getFormattedDateTime(baseTime.getTime()));
-					log("Died at....: "+ DateUtil.getFormattedDateTime(sp.getTimestamp()) +" with price $ "+ String.format("%f", sp.getSpotPriceFloat()));
-					double durationInMinutes = TimeUnit.MILLISECONDS.toMinutes(sp.getTimestamp().getTime() - baseTime.getTimeInMillis());
-					double probability = durationInMinutes / baseMinutesUntilFailure;
-					log("Total alive: "+ durationInMinutes +"/"+ baseMinutesUntilFailure +" "+ String.format("%.2f", probability * 100)+ "%");
-					died = true;
-					actualProbability = probability > 1 ? 1.0 : probability;
-					break;
-				}
-			}
-			
-			if (!died) {
-				actualProbability = 1.0;
-				log("Not died.");
-			}
-			
-			baseTime.add(Calendar.HOUR_OF_DAY, 1);
-			
-			matrixMedian[dayOfWeek][hourOfDay].add(new MatrixRow(actualProbability, baseMinutesUntilFailure));
-			matrixMean[dayOfWeek][hourOfDay].add(new MatrixRow(actualProbability, baseMinutesUntilFailure));
+		// base price is the median of the last day
+		SurvivalBacktest backtest = new SurvivalBacktest(priceSeries, cases, confidenceInterval, 
+				SurvivalBacktest.medianOfPreviousDays(1), SurvivalBacktest.PROPORTIONAL);
 		
-			
-		} // while baseTime
+		List<MatrixRow>[][] matrixMedian = SurvivalBacktest.toMatrix(backtest.run());
+		List<MatrixRow>[][] matrixMean = matrixMedian;
 
 		printMatrix(false, "Median on "+ instance, matrixMedian);
 		printMatrix(true, "Mean on "+ instance, matrixMean);
@@ -4,14 +4,12 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.apache.commons.io.FileUtils;
@@ -20,13 +18,11 @@ import org.apache.logging.log4j.Logger;
 
 import com.amazonaws.regions.Regions;
 
-import cloud.aws.bean.MySpotPrice;
+import cloud.aws.bean.CaseBuckets;
+import cloud.aws.bean.PriceSeries;
 import cloud.aws.dao.SpotDAO;
 import cloud.aws.util.AWSUtil;
-import core.executor.cbr.Case;
 import core.util.DateUtil;
-import core.util.KaplanMeierEstimator;
-import core.util.KaplanMeierEstimator.Interval;
 import core.util.Statistic;
 
 public class SurvivalExperiment02Thread implements Runnable {
@@ -48,6 +44,7 @@ public class SurvivalExperiment02Thread implements Runnable {
 	private Integer hourOfDay = null;
 	
 	private SpotDAO dao;
+	private CaseBuckets cases;
 
 
 	
@@ -73,51 +70,20 @@ public class SurvivalExperiment02Thread implements Runnable {
 	
 	public void process() throws SQLException {
 
-		@SuppressWarnings("unchecked")
-		List<MatrixRow>[][] matrixMedian = new ArrayList[8][24];
-		@SuppressWarnings("unchecked")
-		List<MatrixRow>[][] matrixMean = new ArrayList[8][24];
-		
-		// Initializing matrix
-		for (int i = 1; i < 8; i++) {
-			for (int j = 0; j < 24; j++) {
-				matrixMedian[i][j] = new ArrayList<>();
-				matrixMean[i][j] = new ArrayList<>();
-			}
+		// prices and cases are loaded once and all hours are simulated in memory
+		if (cases == null) {
+			cases = dao.findAllCases(REGION, ZONE, instance);
 		}
+		PriceSeries priceSeries = dao.findPriceSeries(REGION, ZONE, instance);
 		
-		// Defining experiment date init
-		
-		Calendar baseTime = Calendar.getInstance();
-		baseTime.set(Calendar.MONTH, 8); // 0=January, ..., 8=September
-		baseTime.set(Calendar.DAY_OF_MONTH, 1); // day 1, 6th day of week
-		baseTime.set(Calendar.HOUR_OF_DAY, 0); // 0 hour
-		baseTime.set(Calendar.MINUTE, 0); // 0 minute
-		baseTime.set(Calendar.SECOND, 0); // 0 second
-		baseTime.set(Calendar.MILLISECOND, 0); // 0 second
+		SurvivalBacktest backtest = new SurvivalBacktest(priceSeries, cases, confidenceInterval, 
+				SurvivalBacktest.meanOfPreviousDays(previousDaysToPriceReference), SurvivalBacktest.PROPORTIONAL);
+		if (dayOfWeek != null && hourOfDay != null) {
+			backtest.setBucket(dayOfWeek, hourOfDay);
+		}
 		
-		while (baseTime.get(Calendar.MONTH) <= 10) { // sep, oct, nov
-			
-//			log.info("Processing "+ instance +" on "+ baseTime.getTime());
-
-			int localDayOfWeek = baseTime.get(Calendar.DAY_OF_WEEK);
-			int localHourOfDay = baseTime.get(Calendar.HOUR_OF_DAY);
-			
-			MatrixRow survivalPercentualRow = null;
-			if (dayOfWeek == null || hourOfDay == null) {
-				survivalPercentualRow = processSurvivalPercentual(localDayOfWeek, localHourOfDay, baseTime);
-			} else if (dayOfWeek == localDayOfWeek && hourOfDay == localHourOfDay){
-				survivalPercentualRow = processSurvivalPercentual(localDayOfWeek, localHourOfDay, baseTime);
-			}
-			
-			if (survivalPercentualRow != null) {
-				matrixMedian[localDayOfWeek][localHourOfDay].add(survivalPercentualRow);
-				matrixMean[localDayOfWeek][localHourOfDay].add(survivalPercentualRow);
-			}
-			
-			baseTime.add(Calendar.HOUR_OF_DAY, 1);
-			
-		} // while baseTime
+		List<MatrixRow>[][] matrixMedian = SurvivalBacktest.toMatrix(backtest.run());
+		List<MatrixRow>[][] matrixMean = matrixMedian;
 
 		printMatrix(false, "Median on "+ instance, matrixMedian);
 		printMatrix(true, "Mean on "+ instance, matrixMean);
@@ -127,101 +93,6 @@ public class SurvivalExperiment02Thread implements Runnable {
 		
 	}
 	
-	private MatrixRow processSurvivalPercentual(int dayOfWeek, int hourOfDay, Calendar baseTime) throws SQLException {
-		
-		
-		log("-------------------------------------------------------");
-		log("GETTING SIMILAR CASES. DOW: "+ dayOfWeek +" and HOD: "+ hourOfDay);
-		log("-------------------------------------------------------");
-		
-		// Getting cases with same REGION, ZONE, INSTANCE, DAY and HOUR
-		List<Case> cases = dao.findCases(REGION, ZONE, instance, dayOfWeek, hourOfDay);
-		
-		// create a set of survivor time.
-		List<Interval> intervals = KaplanMeierEstimator.compute(cases);
-		log("Cases....: "+ cases.size());
-		log("Intervals: "+ intervals.size());
-		
-		// searching 'interval object' with confidence interval to find minutes until failure 
-		Interval base = intervals.get(0);
-		for (Interval n : intervals) {
-//			 log(n.getEnd() +" - "+ String.format("%f", n.getCumulativeSurvival()) +" "+ n.getNumberCensured() +"/"+ n.getNumberDied());
-			if (n.getCumulativeSurvival() >= confidenceInterval) {
-				base = n;
-			} else {
-				break;
-			}
-		}
-		minutesToTest = base.getEnd();
-		
-		log("Interval in "+ (confidenceInterval * 100) +"%: "+ minutesToTest +" minutes until failure.");
-		
-		log("-------------------------------------------------------");
-		log("DEFINING BASE PRICE");
-		log("-------------------------------------------------------");
-		
-		// getting a median of last N days
-		Calendar previousDateTemp = Calendar.getInstance();
-		previousDateTemp.setTimeInMillis(baseTime.getTimeInMillis());
-		previousDateTemp.add(Calendar.DAY_OF_MONTH, previousDaysToPriceReference * -1);
-		
-		List<MySpotPrice> changes = dao.findAll(REGION, ZONE, instance, previousDateTemp.getTime(), baseTime.getTime());
-		log("Price changes: "+ changes.size());
-		List<Double> priceList = changes.stream().map(x -> Double.valueOf(x.getSpotPrice())).collect(Collectors.toList());
-		
-		double min = priceList.stream().reduce(Double.MAX_VALUE, Double::min);
-		double max = priceList.stream().reduce(Double.MIN_VALUE, Double::max);
-		
-		double mean = Statistic.mean(priceList);
-		double median = Statistic.median(priceList);
-		double standardDeviation = Statistic.standardDeviation(priceList);
-		log("Min price......: "+ String.format("%f", min));
-		log("Max price......: "+ String.format("%f", max));
-		log("Mean price.....: "+ String.format("%f", mean));
-		log("Median price...: "+ String.format("%f", median));
-		log("Standard Dev...: "+ String.format("%f", standardDeviation));
-		
-		float basePrice = Double.valueOf(mean).floatValue();
-		log("Base price....: "+ String.format("%f", basePrice));
-		
-		
-		log("-------------------------------------------------------");
-		log("GETTING EXPERIMENT 'UNKNOWN' DATA AFTER BASE TIME "+ DateUtil.getFormattedDateTime(baseTime.getTime()));
-		log("-------------------------------------------------------");
-		
-		Calendar infiniteDate = Calendar.getInstance();
-		infiniteDate.add(Calendar.YEAR, 10);
-		
-		List<MySpotPrice> changesAfterBaseTime = dao.findAll(REGION, ZONE, instance, baseTime.getTime(), infiniteDate.getTime());
-		log("Price changes.: "+ changesAfterBaseTime.size());
-		
-		Double actualProbability = null;
-		boolean died = false;
-		for(MySpotPrice sp : changesAfterBaseTime) {
-			
-			if (sp.getSpotPriceFloat() > basePrice) {
-				log("Started at.: "+ DateUtil.getFormattedDateTime(baseTime.getTime()));
-				log("Died at....: "+ DateUtil.getFormattedDateTime(sp.getTimestamp()) +" with price $ "+ String.format("%f", sp.getSpotPriceFloat()));
-				double durationInMinutes = TimeUnit.MILLISECONDS.toMinutes(sp.getTimestamp().getTime() - baseTime.getTimeInMillis());
-				double probability = durationInMinutes / minutesToTest;
-				log("Total alive: "+ durationInMinutes +"/"+ minutesToTest +" "+ String.format("%.2f", probability * 100)+ "%");
-				died = true;
-				actualProbability = probability > 1 ? 1.0 : probability;
-				break;
-			}
-		}
-		
-		if (!died) {
-			actualProbability = 1.0;
-			log("Not died.");
-		}
-		
-		return new MatrixRow(actualProbability, minutesToTest);
-		
-	}
-	
-	
-	
 	@SuppressWarnings("deprecation")
 	private void plotMatrix(Boolean mean, String title, List<MatrixRow>[][] matrixMedian) {
 		List<Double> medians = new ArrayList<>();
@@ -298,6 +169,8 @@ public class SurvivalExperiment02Thread implements Runnable {
 			process();
 		} catch (SQLException e) {
 			log.error("Error when processing "+ instance +": "+ e.getMessage());
+		} finally {
+			dao.closeConnection();
 		}
 	}
 	
@@ -0,0 +1,90 @@
+package main;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import cloud.aws.bean.CaseBuckets;
+import cloud.aws.bean.PriceSeries;
+import cloud.aws.dao.SpotDAO;
+
+/**
+ * Runs all confidence interval x previous days combinations of {@link SurvivalExperiment04Thread} for one series.
+ * Prices and cases are loaded once and the combinations are simulated in parallel on the shared data.
+ * Each combination produces the same result of running it alone.
+ */
+public class SurvivalExperiment04Sweep implements Runnable {
+
+	private static final Logger log = LogManager.getLogger(SurvivalExperiment04Sweep.class);
+
+	private String region;
+	private String zone;
+	private String instance;
+	private double[] confidenceIntervals;
+	private int[] daysToPriceReference;
+	private String folderToSave;
+	private boolean useLowerBound = false;
+
+	public SurvivalExperiment04Sweep(String region, String zone, String instance, double[] confidenceIntervals, int[] daysToPriceReference, String folder) {
+		this.region = region;
+		this.zone = zone;
+		this.instance = instance;
+		this.confidenceIntervals = confidenceIntervals;
+		this.daysToPriceReference = daysToPriceReference;
+		this.folderToSave = folder;
+	}
+
+	/**
+	 * @see SurvivalExperiment04Thread#setUseLowerBound(boolean)
+	 */
+	public void setUseLowerBound(boolean useLowerBound) {
+		this.useLowerBound = useLowerBound;
+	}
+
+	@Override
+	public void run() {
+
+		List<SurvivalExperiment04Thread> experiments = new ArrayList<>();
+		for (double confidence : confidenceIntervals) {
+			for (int daysBefore : daysToPriceReference) {
+				SurvivalExperiment04Thread experiment = new SurvivalExperiment04Thread(region, zone, instance, confidence, null, daysBefore, null, null, folderToSave);
+				experiment.setUseLowerBound(useLowerBound);
+				if (!experiment.isAlreadyProcessed()) {
+					experiments.add(experiment);
+				}
+			}
+		}
+
+		if (experiments.isEmpty()) {
+			return;
+		}
+
+		long start = System.currentTimeMillis();
+
+		SpotDAO dao = new SpotDAO();
+		PriceSeries priceSeries;
+		CaseBuckets cases;
+		try {
+			priceSeries = dao.findPriceSeries(region, zone, instance);
+			cases = dao.findAllCases(region, zone, instance);
+		} catch (SQLException e) {
+			log.error("Error when loading "+ region +"/"+ zone +"/"+ instance +": "+ e.getMessage());
+			return;
+		} finally {
+			dao.closeConnection();
+		}
+
+		long loaded = System.currentTimeMillis();
+
+		for (SurvivalExperiment04Thread experiment : experiments) {
+			experiment.setSeriesData(priceSeries, cases);
+		}
+		experiments.parallelStream().forEach(SurvivalExperiment04Thread::run);
+
+		log.info("Sweep of "+ region +"/"+ zone +"/"+ instance +": "+ experiments.size() +" combinations. Loaded in "+ (loaded - start) +" ms, simulated in "+ (System.currentTimeMillis() - loaded) +" ms.");
+	}
+
+}
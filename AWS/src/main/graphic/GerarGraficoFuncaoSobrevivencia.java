@@ -13,20 +13,19 @@ import org.apache.logging.log4j.Logger;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 
-import cloud.aws.dao.SpotDAO;
+import cloud.aws.bean.SeriesKey;
+import cloud.aws.bean.SurvivalCube;
 import cloud.aws.util.AWSUtil;
-import core.executor.cbr.Case;
-import core.util.KaplanMeierEstimator;
+import cloud.aws.util.SurvivalCubeBatch;
 import core.util.KaplanMeierEstimator.Interval;
 
 public class GerarGraficoFuncaoSobrevivencia extends AbstractBaseTask {
 	
 	private static final Logger log = LogManager.getLogger(GerarGraficoFuncaoSobrevivencia.class);
 	
-	private SpotDAO dao;
+	private boolean plotConfidenceBand = false;
 	
 	public GerarGraficoFuncaoSobrevivencia() {
-		dao = new SpotDAO();
 		EXPORT_FOLDER += File.separatorChar + "SurvivorCurve_"+ new SimpleDateFormat("yy_MM_dd_HHmm").format(new Date());
 		if (!new File(EXPORT_FOLDER).exists()) {
 			new File(EXPORT_FOLDER).mkdirs();
@@ -34,6 +33,13 @@ public class GerarGraficoFuncaoSobrevivencia extends AbstractBaseTask {
 
 	}
 
+	/**
+	 * Also plots the lower and upper bounds of the 95% confidence band of each curve.
+	 */
+	public void setPlotConfidenceBand(boolean plotConfidenceBand) {
+		this.plotConfidenceBand = plotConfidenceBand;
+	}
+
 	public void run() throws SQLException, IOException {
 		
 		String[] regions = AWSUtil.usedRegions;
@@ -50,6 +56,10 @@ public class GerarGraficoFuncaoSobrevivencia extends AbstractBaseTask {
 		log.info("Days.....: "+ Arrays.toString(days));
 		log.info("Hours....: "+ Arrays.toString(hours));
 		
+		// all curves are computed up front, loading and computing in parallel
+		SurvivalCubeBatch.Result batch = new SurvivalCubeBatch().compute(SeriesKey.combinations(regions, zones, instances));
+		log.info("Curves computed: "+ batch);
+		
 		
 		for (int d = 0; d < days.length; d++) {
 			
@@ -67,8 +77,14 @@ public class GerarGraficoFuncaoSobrevivencia extends AbstractBaseTask {
 						for (String instance : instances) {
 							try {
 								XYSeries series = new XYSeries(instance);
-								recoverCases(series, region, zone, instance, dayOfWeek, hourOfDay, axisInHour);
+								XYSeries lower = plotConfidenceBand ? new XYSeries(instance +" (lower 95%)") : null;
+								XYSeries upper = plotConfidenceBand ? new XYSeries(instance +" (upper 95%)") : null;
+								recoverCases(series, lower, upper, batch.getCube(new SeriesKey(region, zone, instance)), dayOfWeek, hourOfDay, axisInHour);
 								dataset.addSeries(series);
+								if (plotConfidenceBand) {
+									dataset.addSeries(lower);
+									dataset.addSeries(upper);
+								}
 							} catch (Exception e) {
 								log.error("Error when recover cases "+ e.getMessage());
 							}
@@ -90,12 +106,21 @@ public class GerarGraficoFuncaoSobrevivencia extends AbstractBaseTask {
 
 	}
 
-	private void recoverCases(XYSeries seriesNew, String region, String zone, String instance, int dayOfWeek, int hourOfDay, boolean axisInHour) throws SQLException {
-		List<Case> casesList = dao.findCases(region, zone, instance, dayOfWeek, hourOfDay);
-		log.info("["+ instance + " "+ dayOfWeek +" "+ hourOfDay +"]\t Case Size: "+ casesList.size());
-		List<Interval> intervals = KaplanMeierEstimator.compute(casesList);
+	private void recoverCases(XYSeries seriesNew, XYSeries lower, XYSeries upper, SurvivalCube cube, int dayOfWeek, int hourOfDay, boolean axisInHour) {
+		if (cube == null) {
+			throw new RuntimeException("Cases of the series could not be loaded.");
+		}
+		log.info("["+ cube.getInstance() + " "+ dayOfWeek +" "+ hourOfDay +"]\t Case Size: "+ cube.getCaseCount(dayOfWeek, hourOfDay));
+		if (!cube.hasCurve(dayOfWeek, hourOfDay)) {
+			throw new RuntimeException("Not enough cases to compute the survival curve.");
+		}
+		List<Interval> intervals = cube.getCurve(dayOfWeek, hourOfDay);
 		for (Interval i : intervals) {
 			seriesNew.add(i.getEnd() / (axisInHour ? 60 : 1), i.getCumulativeSurvival());
+			if (lower != null && upper != null) {
+				lower.add(i.getEnd() / (axisInHour ? 60 : 1), i.getLowerBound());
+				upper.add(i.getEnd() / (axisInHour ? 60 : 1), i.getUpperBound());
+			}
 		}
 	}
 
@@ -3,7 +3,7 @@ import java.io.IOException;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
-import java.util.Map;
+import java.util.Date;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -14,7 +14,9 @@ import org.jfree.data.time.TimeSeriesCollection;
 
 import com.amazonaws.regions.Regions;
 
+import cloud.aws.bean.PriceSeries;
 import cloud.aws.dao.SpotDAO;
+import core.util.DateUtil;
 
 public class GerarGraficoPrecos extends AbstractBaseTask {
 	
@@ -32,44 +34,47 @@ public class GerarGraficoPrecos extends AbstractBaseTask {
 		String[] zones = new String[] {"us-west-1b", "us-west-1c", };
 		String[] instances = new String[] {"m4.large", "m3.medium", "m3.xlarge", "r4.large", "m3.xlarge"};
 		
-		for (String zone : zones) {
+		try {
+			for (String zone : zones) {
 			
-			for (String instance : instances) {
-				TimeSeriesCollection dataset = new TimeSeriesCollection();
-				TimeSeries series = new TimeSeries("Prices");
+				for (String instance : instances) {
+					TimeSeriesCollection dataset = new TimeSeriesCollection();
+					TimeSeries series = new TimeSeries("Prices");
 				
-				Calendar calInit = Calendar.getInstance();
-				calInit.add(Calendar.MONTH, -1);
-				calInit.set(Calendar.MONTH, 8);
-				calInit.set(Calendar.DAY_OF_MONTH, 5);
+					Calendar calInit = Calendar.getInstance();
+					calInit.add(Calendar.MONTH, -1);
+					calInit.set(Calendar.MONTH, 8);
+					calInit.set(Calendar.DAY_OF_MONTH, 5);
 				
-				Calendar calEnd = Calendar.getInstance();
-				calEnd.set(Calendar.MONTH, 8);
-				calEnd.set(Calendar.DAY_OF_MONTH, 10);
+					Calendar calEnd = Calendar.getInstance();
+					calEnd.set(Calendar.MONTH, 8);
+					calEnd.set(Calendar.DAY_OF_MONTH, 10);
 				
-				Map<Long, Double> map = dao.findPriceChangeHistory(region, zone, instance, calInit.getTime(), calEnd.getTime());
+					PriceSeries prices = dao.findPriceSeries(region, zone, instance, DateUtil.getInitDate(calInit.getTime()), DateUtil.getEndOfDate(calEnd.getTime()));
 				
-				for (Map.Entry<Long, Double> entry : map.entrySet()) {
-					Calendar cal = Calendar.getInstance();
-					cal.setTimeInMillis(entry.getKey());
-//					RegularTimePeriod timePeriod = new Day(cal.getTime());
-//					RegularTimePeriod timePeriod = new Minute(cal.getTime());
-					RegularTimePeriod timePeriod = new Second(cal.getTime());
-					series.addOrUpdate(timePeriod, entry.getValue());
-				}
+					PriceSeries.Cursor cursor = prices.cursor();
+					while (cursor.next()) {
+//					RegularTimePeriod timePeriod = new Day(new Date(cursor.getTime()));
+//					RegularTimePeriod timePeriod = new Minute(new Date(cursor.getTime()));
+						RegularTimePeriod timePeriod = new Second(new Date(cursor.getTime()));
+						series.addOrUpdate(timePeriod, cursor.getPrice());
+					}
 				
-				dataset.addSeries(series);
+					dataset.addSeries(series);
 				
-				SimpleDateFormat sdf = new SimpleDateFormat("YYYYMMdd");
+					SimpleDateFormat sdf = new SimpleDateFormat("YYYYMMdd");
 				
-				String filename = "prices_"+ region + "_"+ zone +"_"+ sdf.format(calInit.getTime()) +"-"+ sdf.format(calEnd.getTime()) +"_"+ instance;
-				String title = "Price changes "+ region + "/"+ zone +" "+ instance +" "+ sdf.format(calInit.getTime()) +" to "+ sdf.format(calEnd.getTime()) +" ("+ series.getItemCount() +")";
-				super.exportImageTimeSeriesChart(dataset, filename, title, "Date", "Price");
+					String filename = "prices_"+ region + "_"+ zone +"_"+ sdf.format(calInit.getTime()) +"-"+ sdf.format(calEnd.getTime()) +"_"+ instance;
+					String title = "Price changes "+ region + "/"+ zone +" "+ instance +" "+ sdf.format(calInit.getTime()) +" to "+ sdf.format(calEnd.getTime()) +" ("+ series.getItemCount() +")";
+					super.exportImageTimeSeriesChart(dataset, filename, title, "Date", "Price");
 				
-			}
+				}
 			
-			log.info("Done.");
+				log.info("Done.");
 			
+			}
+		} finally {
+			dao.closeConnection();
 		}
 		
 
@@ -0,0 +1,160 @@
+package cloud.aws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cloud.aws.bean.PriceSeries;
+import core.executor.cbr.Case;
+import core.util.TimeBuckets;
+
+/**
+ * The cases of the next greater price index, of the parallel chunks and of all addictions in one pass must be the
+ * same, in the same order, as the ones of the original forward scan.
+ */
+public class AWSCBRCreatorTest {
+
+	private static final String REGION = "us-west-2";
+	private static final String ZONE = "us-west-2a";
+	private static final String INSTANCE = "m1.large";
+
+	private static final long INIT_TIME = 1500000000000L;
+	private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+	private static final double[] ADDICTIONS = new double[] {1, 1.1, 1.3, 1.5};
+
+	private static ForkJoinPool pool;
+
+	@BeforeClass
+	public static void startPool() {
+		pool = new ForkJoinPool(3);
+	}
+
+	@AfterClass
+	public static void stopPool() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void revocationAtSixtyMinutesIsACase() {
+
+		AWSCBRCreator creator = newCreator(1000);
+
+		List<Case> before = creator.createCasesWithForwardScan(series(new long[] {0, 59}, new double[] {0.1, 0.2}), 1);
+		assertTrue(before.isEmpty());
+
+		List<Case> at = creator.createCasesWithForwardScan(series(new long[] {0, 60}, new double[] {0.1, 0.2}), 1);
+		assertEquals(1, at.size());
+		assertFalse(at.get(0).isCensored());
+		assertEquals(60, at.get(0).getTimeToRevocation());
+
+		assertSameCases(series(new long[] {0, 59}, new double[] {0.1, 0.2}), creator);
+		assertSameCases(series(new long[] {0, 60}, new double[] {0.1, 0.2}), creator);
+		assertSameCases(series(new long[] {0, 61}, new double[] {0.1, 0.2}), creator);
+	}
+
+	@Test
+	public void boundaryOfSixtyMinutes() {
+		// gaps around one hour, censored and revoked cases, and extra hourly cases of long revocations
+		long[] minutes = new long[] {0, 59, 60, 61, 119, 120, 121, 180, 240, 299, 300, 301, 420};
+		double[] prices = new double[] {0.3, 0.1, 0.2, 0.1, 0.3, 0.2, 0.4, 0.1, 0.2, 0.2, 0.5, 0.1, 0.3};
+		for (int chunkSize : new int[] {1, 2, 5, 1000}) {
+			assertSameCases(series(minutes, prices), newCreator(chunkSize));
+		}
+	}
+
+	@Test
+	public void ties() {
+		// equal prices never revoke
+		long[] minutes = new long[40];
+		double[] prices = new double[40];
+		for (int i = 0; i < minutes.length; i++) {
+			minutes[i] = i * 45L;
+			prices[i] = i % 7 == 6 ? 0.3 : (i % 2 == 0 ? 0.2 : 0.1);
+		}
+		for (int chunkSize : new int[] {1, 3, 8, 1000}) {
+			assertSameCases(series(minutes, prices), newCreator(chunkSize));
+		}
+
+		double[] flat = new double[40];
+		Arrays.fill(flat, 0.2);
+		AWSCBRCreator creator = newCreator(4);
+		for (Case c : creator.createCasesWithNextGreaterIndex(series(minutes, flat), 1)) {
+			assertTrue(c.isCensored());
+		}
+		assertSameCases(series(minutes, flat), creator);
+	}
+
+	@Test
+	public void randomSeries() {
+		Random random = new Random(1);
+		for (int it = 0; it < 50; it++) {
+
+			int size = 1 + random.nextInt(400);
+			int levels = 1 + random.nextInt(20);
+			long[] minutes = new long[size];
+			double[] prices = new double[size];
+			long minute = 0;
+			for (int i = 0; i < size; i++) {
+				minute += 1 + random.nextInt(random.nextBoolean() ? 30 : 300);
+				minutes[i] = minute;
+				prices[i] = 0.1 + random.nextInt(levels) / 100.0;
+			}
+
+			assertSameCases(series(minutes, prices), newCreator(1 + random.nextInt(size)));
+		}
+	}
+
+	/**
+	 * Compares all the generators with the forward scan, for every addiction.
+	 */
+	private static void assertSameCases(PriceSeries series, AWSCBRCreator creator) {
+
+		List<List<Case>> onePass = creator.createCasesForAddictions(series, ADDICTIONS);
+
+		for (int k = 0; k < ADDICTIONS.length; k++) {
+			double addiction = ADDICTIONS[k];
+			List<String> expected = toStrings(creator.createCasesWithForwardScan(series, addiction));
+			String message = "Addiction "+ addiction +", chunk size "+ creator.chunkSize;
+
+			assertEquals(message, expected, toStrings(creator.createCasesWithNextGreaterIndex(series, addiction)));
+			assertEquals(message, expected, toStrings(creator.createCasesInParallel(series, addiction, pool)));
+			assertEquals(message, expected, toStrings(onePass.get(k)));
+		}
+	}
+
+	private static AWSCBRCreator newCreator(int chunkSize) {
+		AWSCBRCreator creator = new AWSCBRCreator(REGION, ZONE, INSTANCE, null, false);
+		creator.timeBuckets = TimeBuckets.UTC;
+		creator.chunkSize = chunkSize;
+		return creator;
+	}
+
+	private static PriceSeries series(long[] minutes, double[] prices) {
+		long[] times = new long[minutes.length];
+		for (int i = 0; i < minutes.length; i++) {
+			times[i] = INIT_TIME + minutes[i] * MINUTE;
+		}
+		return new PriceSeries(REGION, ZONE, INSTANCE, times, prices);
+	}
+
+	private static List<String> toStrings(List<Case> cases) {
+		List<String> strings = new ArrayList<>(cases.size());
+		for (Case c : cases) {
+			strings.add(c.toStringCase());
+		}
+		return strings;
+	}
+
+}
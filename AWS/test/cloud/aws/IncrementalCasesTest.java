@@ -0,0 +1,148 @@
+package cloud.aws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import cloud.aws.bean.PriceSeries;
+import core.executor.cbr.Case;
+import core.util.TimeBuckets;
+
+/**
+ * Regenerates random series step by step with {@link AWSCBRCreator#createCasesFromWatermark(PriceSeries, long, double, List)}
+ * and compares the saved cases with the generation of the whole series. Series have repeated timestamps, as the
+ * prices table, and the open cases are read back as {@link cloud.aws.dao.SpotDAO#findOpenCases(String, String, String, double)}
+ * does: init value rounded as saved, then the closest price of the base time.
+ */
+public class IncrementalCasesTest {
+
+	private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+	@Test
+	public void incrementalStepsGenerateTheCasesOfTheWholeSeries() {
+
+		Random random = new Random(22);
+		AWSCBRCreator creator = new AWSCBRCreator("us-west-2", "us-west-2a", "m1.large", null, false);
+		creator.timeBuckets = TimeBuckets.UTC;
+
+		int steps = 0;
+
+		for (int it = 0; it < 200; it++) {
+
+			PriceSeries full = randomSeries(random);
+			int size = full.size();
+
+			for (double addiction : new double[] {1, 1.1, 1.3}) {
+
+				// first generation up to a record followed by a later time, the new records come after the watermark
+				int cut = nextCut(full, random.nextInt(size), size);
+				List<Case> saved = new ArrayList<>(creator.createCasesWithNextGreaterIndex(full.subSeries(0, cut + 1), addiction));
+
+				while (cut < size - 1) {
+
+					int next = nextCut(full, cut + 1 + random.nextInt(200), size);
+					long watermark = full.getTime(cut);
+					PriceSeries upToNext = full.subSeries(0, next + 1);
+
+					List<Case> open = new ArrayList<>();
+					List<Case> kept = new ArrayList<>();
+					for (Case c : saved) {
+						if (c.isCensored() && c.getAdditionAllowed() == addiction) {
+							open.add(readOpenCase(upToNext, c, addiction));
+						} else {
+							kept.add(c);
+						}
+					}
+
+					// as loaded by executeIncremental
+					PriceSeries loaded = upToNext.slice(watermark - HOUR + 1, Long.MAX_VALUE);
+					kept.addAll(creator.createCasesFromWatermark(loaded, watermark, addiction, open));
+
+					saved = kept;
+					cut = next;
+					steps++;
+				}
+
+				assertEquals("Iteration "+ it +", addiction "+ addiction, 
+						toSortedStrings(creator.createCasesWithNextGreaterIndex(full, addiction)), toSortedStrings(saved));
+			}
+		}
+
+		assertTrue(steps > 0);
+	}
+
+	/**
+	 * Prices of a few levels, minutes to hours apart, with some timestamps repeated.
+	 */
+	private static PriceSeries randomSeries(Random random) {
+
+		int size = 2 + random.nextInt(600);
+		int levels = 1 + random.nextInt(30);
+		long[] times = new long[size];
+		double[] prices = new double[size];
+
+		long time = 1500000000000L;
+		for (int i = 0; i < size; i++) {
+			if (i == 0 || random.nextInt(10) != 0) {
+				time += TimeUnit.MINUTES.toMillis(1 + random.nextInt(random.nextBoolean() ? 30 : 400));
+			}
+			times[i] = time;
+			prices[i] = 0.1 + random.nextInt(levels) / 100.0;
+		}
+		return new PriceSeries("us-west-2", "us-west-2a", "m1.large", times, prices);
+	}
+
+	/**
+	 * Moves the index forward past the records of the same time, so all of them are before the watermark.
+	 */
+	private static int nextCut(PriceSeries series, int index, int size) {
+		int cut = Math.min(index, size - 1);
+		while (cut < size - 1 && series.getTime(cut + 1) == series.getTime(cut)) {
+			cut++;
+		}
+		return cut;
+	}
+
+	private static Case readOpenCase(PriceSeries series, Case saved, double addiction) {
+
+		// numeric(12,5) of the cases table
+		double savedValue = Math.round(saved.getInitValue() * 100000) / 100000.0;
+
+		double price = Double.NaN;
+		for (int i = series.indexOfFirstAtOrAfter(saved.getInitTime()); i < series.size() && series.getTime(i) == saved.getInitTime(); i++) {
+			if (Double.isNaN(price) || Math.abs(series.getPrice(i) * addiction - savedValue) < Math.abs(price * addiction - savedValue)) {
+				price = series.getPrice(i);
+			}
+		}
+
+		Case open = new Case(saved.getRegion(), saved.getZone(), saved.getInstance());
+		open.setDayOfWeek(saved.getDayOfWeek());
+		open.setHourOfDay(saved.getHourOfDay());
+		open.setInitTime(saved.getInitTime());
+		open.setEndTime(saved.getEndTime());
+		open.setTimeToRevocation(saved.getTimeToRevocation());
+		open.setSkipRecords(saved.getSkipRecords());
+		open.setEndValue(saved.getEndValue());
+		open.setInitValue(Double.isNaN(price) ? savedValue : price * addiction);
+		open.setAdditionAllowed(addiction);
+		open.setCensored(true);
+		return open;
+	}
+
+	private static List<String> toSortedStrings(List<Case> cases) {
+		List<String> strings = new ArrayList<>(cases.size());
+		for (Case c : cases) {
+			strings.add(c.toStringCase());
+		}
+		Collections.sort(strings);
+		return strings;
+	}
+
+}
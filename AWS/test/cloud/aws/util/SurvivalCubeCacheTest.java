@@ -0,0 +1,56 @@
+package cloud.aws.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.After;
+import org.junit.Test;
+
+import cloud.aws.bean.CaseBuckets;
+import cloud.aws.bean.SurvivalCube;
+
+public class SurvivalCubeCacheTest {
+
+	private final SurvivalCubeCache cache = SurvivalCubeCache.getInstance();
+
+	@After
+	public void clear() {
+		cache.clear();
+	}
+
+	@Test
+	public void casesOfTheSameSeriesGetTheirOwnCube() {
+
+		CaseBuckets all = cases(new int[] {60, 120, 180}, new boolean[] {false, false, true});
+		CaseBuckets window = cases(new int[] {60}, new boolean[] {false});
+
+		SurvivalCube cubeOfAll = cache.get(all);
+		SurvivalCube cubeOfWindow = cache.get(window);
+
+		assertNotSame(cubeOfAll, cubeOfWindow);
+		assertSame(cubeOfAll, cache.get(all));
+		assertSame(cubeOfWindow, cache.get(window));
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void invalidateRemovesTheCubesOfGivenCases() {
+
+		CaseBuckets all = cases(new int[] {60, 120}, new boolean[] {false, true});
+		SurvivalCube cube = cache.get(all);
+
+		cache.invalidate("us-west-2", "us-west-2a", "m1.large");
+
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getEstimatedBytes());
+		assertNotSame(cube, cache.get(all));
+	}
+
+	private static CaseBuckets cases(int[] times, boolean[] censored) {
+		CaseBuckets cases = new CaseBuckets("us-west-2", "us-west-2a", "m1.large");
+		cases.setBucket(2, 10, times, censored);
+		return cases;
+	}
+
+}
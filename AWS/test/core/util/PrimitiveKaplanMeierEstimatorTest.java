@@ -0,0 +1,54 @@
+package core.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import core.util.KaplanMeierEstimator.Interval;
+
+public class PrimitiveKaplanMeierEstimatorTest {
+
+	@Test
+	public void sameCurveAsKaplanMeierEstimator() {
+		PrimitiveKaplanMeierEstimator estimator = new PrimitiveKaplanMeierEstimator(1);
+		Random random = new Random(2);
+		for (int it = 0; it < 200; it++) {
+
+			int length = 2 + random.nextInt(300);
+			int[] time = new int[length];
+			boolean[] censured = new boolean[length];
+			for (int i = 0; i < length; i++) {
+				time[i] = 1 + random.nextInt(random.nextBoolean() ? 10 : 2000);
+				censured[i] = random.nextInt(3) == 0;
+			}
+
+			List<Interval> expected = KaplanMeierEstimator.compute(time, censured);
+			estimator.compute(time, censured);
+
+			assertEquals(expected.size(), estimator.size());
+			for (int i = 0; i < expected.size(); i++) {
+				Interval interval = expected.get(i);
+				assertEquals(interval.getStart(), estimator.getStart(i));
+				assertEquals(interval.getEnd(), estimator.getEnd(i));
+				assertEquals(interval.getNumberDied(), estimator.getNumberDied(i));
+				assertEquals(interval.getNumberCensured(), estimator.getNumberCensured(i));
+				assertEquals(interval.getCumulativeSurvival(), estimator.getCumulativeSurvival(i), 1e-5);
+			}
+		}
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void baselineFailsWhenEveryTimeIsZero() {
+		KaplanMeierEstimator.compute(new int[] {0, 0, 0}, new boolean[] {false, true, false});
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void failsWhenEveryTimeIsZero() {
+		new PrimitiveKaplanMeierEstimator().compute(new int[] {0, 0, 0}, new boolean[] {false, true, false});
+	}
+
+}